@@ -0,0 +1,82 @@
+package org.example.webbrowser;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark input: saved pages (every index.html under the corpus directory)
+ * and the resource URLs referenced by them.
+ */
+@State(Scope.Benchmark)
+public class PageCorpus {
+    /**
+     * Directory with saved pages, relative to the working directory
+     */
+    @Param("browser_cache")
+    public String corpusDir;
+
+    public List<String> pages;
+    public List<String> pageUrls;
+    public List<String> resourceUrls;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        pages = new ArrayList<>();
+        pageUrls = new ArrayList<>();
+        resourceUrls = new ArrayList<>();
+
+        List<Path> pageFiles;
+        try (Stream<Path> paths = Files.walk(Paths.get(corpusDir), 2)) {
+            pageFiles = paths.filter(path -> path.getFileName().toString().equals("index.html"))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path pageFile : pageFiles) {
+            // Directory names cannot be turned back into URLs ("example_com~<path hash>"),
+            // the page's metadata records the URL it was fetched from
+            CacheMetadata metadata = CacheMetadata.load(CacheMetadata.metadataPath(pageFile));
+            if (metadata == null || metadata.getUrl() == null) {
+                System.out.println("Skipping page without metadata: " + pageFile);
+                continue;
+            }
+            // Saved pages keep their original charset unless they were rewritten
+            String html = HtmlCharset.readFile(pageFile);
+            pages.add(html);
+            pageUrls.add(metadata.getUrl());
+            for (HTMLResourceRewriter.ResourceReference reference : new HTMLResourceRewriter(html).getReferences()) {
+                resourceUrls.add(reference.getUrl());
+            }
+        }
+        if (pages.isEmpty()) {
+            throw new IllegalStateException("No saved pages found in " + Paths.get(corpusDir).toAbsolutePath());
+        }
+        System.out.println("Corpus: " + pages.size() + " pages, " + resourceUrls.size() + " resource URLs");
+    }
+
+    /**
+     * Deletes a temporary cache root with everything the cache wrote into it
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
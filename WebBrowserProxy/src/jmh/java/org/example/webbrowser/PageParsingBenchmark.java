@@ -0,0 +1,115 @@
+package org.example.webbrowser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Page-level passes over the whole corpus: one operation processes every saved page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageParsingBenchmark {
+    private Path cacheRoot;
+    private List<Function<HTMLResourceRewriter.ResourceReference, String>> lookups;
+
+    @Setup(Level.Trial)
+    public void setUp(PageCorpus corpus) throws IOException {
+        // Fetchers are only used for URL resolution, the cache only writes its index into the root
+        cacheRoot = Files.createTempDirectory("benchmark");
+        lookups = new ArrayList<>();
+        for (int i = 0; i < corpus.pages.size(); i++) {
+            String pageUrl = corpus.pageUrls.get(i);
+            WebPageFetcher fetcher = new WebPageFetcher(pageUrl, cacheRoot.resolve("page").toString());
+
+            // Every downloadable resource gets a cache path, as after a complete fetch
+            Map<String, String> localPaths = new HashMap<>();
+            for (HTMLResourceRewriter.ResourceReference reference : new HTMLResourceRewriter(corpus.pages.get(i)).getReferences()) {
+                if (isDownloaded(reference)) {
+                    String url = fetcher.resolveUrl(pageUrl, reference.getUrl());
+                    localPaths.put(url, CacheURLStreamHandler.toURL(cacheRoot.resolve(ContentStore.hash(url))));
+                }
+            }
+            lookups.add(reference -> isDownloaded(reference)
+                    ? localPaths.get(fetcher.resolveUrl(pageUrl, reference.getUrl()))
+                    : null);
+        }
+    }
+
+    /**
+     * Same references WebPageFetcher downloads
+     */
+    private static boolean isDownloaded(HTMLResourceRewriter.ResourceReference reference) {
+        String url = reference.getUrl();
+        return reference.isDownloadable() && !url.isBlank() && !url.startsWith("data:")
+                && !url.startsWith("blob:") && !url.startsWith("file://") && !url.startsWith("#");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        // The cache writes its index files into the root
+        PageCorpus.deleteRecursively(cacheRoot);
+    }
+
+    @Benchmark
+    public void parseHTML(PageCorpus corpus, Blackhole blackhole) {
+        for (String html : corpus.pages) {
+            WebPage page = new WebPage();
+            page.setRawHTML(html);
+            page.parseHTML();
+            blackhole.consume(page);
+        }
+    }
+
+    @Benchmark
+    public void replaceImagesWithProxies(PageCorpus corpus, Blackhole blackhole) {
+        for (String html : corpus.pages) {
+            blackhole.consume(WebBrowserController.replaceImagesWithProxies(html, new HashMap<>(), null));
+        }
+    }
+
+    @Benchmark
+    public void scanResources(PageCorpus corpus, Blackhole blackhole) {
+        for (String html : corpus.pages) {
+            blackhole.consume(new HTMLResourceRewriter(html).getReferences());
+        }
+    }
+
+    /**
+     * Scan and rewrite as done by WebPageFetcher after downloads, including URL resolution
+     */
+    @Benchmark
+    public void rewriteResources(PageCorpus corpus, Blackhole blackhole) throws IOException {
+        for (int i = 0; i < corpus.pages.size(); i++) {
+            String html = corpus.pages.get(i);
+            StringWriter out = new StringWriter(html.length() + 1024);
+            new HTMLResourceRewriter(html).write(out, lookups.get(i), "<base href=\"/\">");
+            blackhole.consume(out.toString());
+        }
+    }
+}
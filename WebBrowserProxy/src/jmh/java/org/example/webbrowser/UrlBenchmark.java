@@ -0,0 +1,85 @@
+package org.example.webbrowser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URL handling and image placeholders over all resource URLs found in the corpus.
+ * One operation processes every URL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlBenchmark {
+    private Path cacheRoot;
+    private WebPageFetcher fetcher;
+    private AddressBar addressBar;
+    private List<ImageProxy> proxies;
+
+    @Setup(Level.Trial)
+    public void setUp(PageCorpus corpus) throws IOException {
+        cacheRoot = Files.createTempDirectory("benchmark");
+        fetcher = new WebPageFetcher("https://example.com/", cacheRoot.resolve("page").toString());
+        addressBar = new AddressBar();
+
+        proxies = new ArrayList<>();
+        for (String url : corpus.resourceUrls) {
+            proxies.add(new ImageProxy(url, url));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        // The cache writes its index files into the root
+        PageCorpus.deleteRecursively(cacheRoot);
+    }
+
+    @Benchmark
+    public void resolveUrl(PageCorpus corpus, Blackhole blackhole) {
+        for (String url : corpus.resourceUrls) {
+            blackhole.consume(fetcher.resolveUrl("https://example.com/dir/page.html", url));
+        }
+    }
+
+    @Benchmark
+    public void getFilenameFromUrl(PageCorpus corpus, Blackhole blackhole) {
+        for (String url : corpus.resourceUrls) {
+            blackhole.consume(fetcher.getFilenameFromUrl(url));
+        }
+    }
+
+    @Benchmark
+    public void validateURL(PageCorpus corpus, Blackhole blackhole) {
+        for (String url : corpus.resourceUrls) {
+            blackhole.consume(addressBar.validateURL(url));
+        }
+    }
+
+    @Benchmark
+    public void createPlaceholder(PageCorpus corpus, Blackhole blackhole) {
+        for (ImageProxy proxy : proxies) {
+            blackhole.consume(proxy.createPlaceholder());
+        }
+    }
+}
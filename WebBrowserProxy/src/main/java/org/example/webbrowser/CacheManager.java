@@ -0,0 +1,392 @@
+package org.example.webbrowser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps browser_cache within a disk budget.
+ *
+ * A persistent index (browser_cache/cache.index) records every cached page
+ * directory with its size, last access time and the blobs it references in
+ * the ContentStore. Lookups and startup read the index instead of walking
+ * directories. When the cache grows past its budget, least recently used
+ * pages are evicted on a background thread; a blob is deleted once no
+ * remaining page references it.
+ */
+public class CacheManager {
+    public static final long DEFAULT_MAX_CACHE_SIZE = 500L * 1024 * 1024;
+
+    private static final String INDEX_FILE = "cache.index";
+    private static final Map<Path, CacheManager> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final ContentStore contentStore;
+    // Access-ordered: iteration starts with the least recently used page
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private final Map<String, Long> blobSizes;
+    private final ExecutorService maintenanceExecutor;
+    private long maxCacheSize;
+    private boolean maintenancePending;
+
+    private CacheManager(Path root) {
+        this.root = root;
+        this.contentStore = new ContentStore(root.resolve(ContentStore.DEFAULT_DIRECTORY));
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.blobSizes = new HashMap<>();
+        this.maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+        this.maintenanceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadIndex();
+    }
+
+    /**
+     * @return Shared manager for a cache root directory
+     */
+    public static CacheManager forRoot(Path root) {
+        return INSTANCES.computeIfAbsent(root.toAbsolutePath().normalize(), CacheManager::new);
+    }
+
+    /**
+     * @return true if the file lies inside the root of any cache manager
+     */
+    public static boolean isInCache(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        for (Path root : INSTANCES.keySet()) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public ContentStore getContentStore() {
+        return contentStore;
+    }
+
+    public synchronized long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Sets the disk budget; eviction runs in the background if the cache is over it
+     */
+    public synchronized void setMaxCacheSize(long maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        requestMaintenance();
+    }
+
+    /**
+     * @return true if the page directory is in the index; marks it as used
+     */
+    public synchronized boolean lookup(String pageName) {
+        CacheEntry entry = entries.get(pageName);
+        if (entry == null) {
+            return false;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        requestMaintenance();
+        return true;
+    }
+
+    /**
+     * Records a freshly written page directory and the blobs it references
+     */
+    public void recordPage(String pageName, Set<String> blobs) {
+        long pageSize = directorySize(root.resolve(pageName));
+        Map<String, Long> sizes = new HashMap<>();
+        for (String blob : blobs) {
+            sizes.put(blob, fileSize(contentStore.resolve(blob)));
+        }
+
+        synchronized (this) {
+            CacheEntry entry = new CacheEntry(pageName);
+            entry.lastAccess = System.currentTimeMillis();
+            entry.pageSize = pageSize;
+            entry.blobs.addAll(blobs);
+            entries.put(pageName, entry);
+            blobSizes.putAll(sizes);
+            requestMaintenance();
+        }
+    }
+
+    /**
+     * @return Total size of indexed pages and blobs in bytes
+     */
+    public synchronized long getTotalSize() {
+        long total = 0;
+        for (CacheEntry entry : entries.values()) {
+            total += entry.pageSize;
+        }
+        for (long size : blobSizes.values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    public synchronized int getPageCount() {
+        return entries.size();
+    }
+
+    /**
+     * Schedules eviction and an index flush on the maintenance thread
+     */
+    private void requestMaintenance() {
+        if (maintenancePending) {
+            return;
+        }
+        maintenancePending = true;
+        maintenanceExecutor.execute(this::runMaintenance);
+    }
+
+    private void runMaintenance() {
+        List<String> evictedPages;
+        List<String> orphanBlobs;
+
+        synchronized (this) {
+            maintenancePending = false;
+            evictedPages = new ArrayList<>();
+            orphanBlobs = new ArrayList<>();
+
+            long total = getTotalSize();
+            Iterator<CacheEntry> iterator = entries.values().iterator();
+            // The most recently used page is never evicted
+            while (total > maxCacheSize && entries.size() - evictedPages.size() > 1 && iterator.hasNext()) {
+                CacheEntry entry = iterator.next();
+                iterator.remove();
+                evictedPages.add(entry.name);
+                total -= entry.pageSize;
+            }
+
+            if (!evictedPages.isEmpty()) {
+                Set<String> referenced = new HashSet<>();
+                for (CacheEntry entry : entries.values()) {
+                    referenced.addAll(entry.blobs);
+                }
+                for (String blob : new ArrayList<>(blobSizes.keySet())) {
+                    if (!referenced.contains(blob)) {
+                        orphanBlobs.add(blob);
+                        blobSizes.remove(blob);
+                    }
+                }
+            }
+        }
+
+        for (String pageName : evictedPages) {
+            System.out.println("Evicting cached page: " + pageName);
+            Path pageDir = root.resolve(pageName);
+            // Responses kept in memory must not point at the deleted files
+            HotCache.pages().invalidateIf(response -> isInDirectory(response, pageDir));
+            deleteRecursively(pageDir);
+        }
+        for (String blob : orphanBlobs) {
+            try {
+                // A fetch in progress may have reused the blob since the sweep
+                if (!contentStore.deleteUnpinned(blob)) {
+                    synchronized (this) {
+                        blobSizes.put(blob, fileSize(contentStore.resolve(blob)));
+                    }
+                }
+            } catch (IOException e) {
+                // Still on disk, a later sweep tries again
+                System.err.println("Failed to delete blob: " + blob);
+                synchronized (this) {
+                    blobSizes.put(blob, fileSize(contentStore.resolve(blob)));
+                }
+            }
+        }
+
+        saveIndex();
+    }
+
+    private void loadIndex() {
+        Path indexPath = root.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            rebuildIndex();
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(indexPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts[0].equals("P") && parts.length == 5) {
+                    CacheEntry entry = new CacheEntry(parts[1]);
+                    entry.lastAccess = Long.parseLong(parts[2]);
+                    entry.pageSize = Long.parseLong(parts[3]);
+                    if (!parts[4].isEmpty()) {
+                        entry.blobs.addAll(List.of(parts[4].split(",")));
+                    }
+                    entries.put(entry.name, entry);
+                } else if (parts[0].equals("B") && parts.length == 3) {
+                    blobSizes.put(parts[1], Long.parseLong(parts[2]));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cache index is damaged, rebuilding: " + e.getMessage());
+            entries.clear();
+            blobSizes.clear();
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Builds the index from the directories on disk (first run or damaged index)
+     */
+    private void rebuildIndex() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        List<Path> pageDirs = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(root)) {
+            paths.filter(Files::isDirectory)
+                    .filter(path -> !path.getFileName().toString().equals(ContentStore.DEFAULT_DIRECTORY))
+                    .filter(path -> Files.exists(path.resolve("index.html")))
+                    .forEach(pageDirs::add);
+        } catch (IOException e) {
+            System.err.println("Failed to scan cache: " + e.getMessage());
+            return;
+        }
+
+        pageDirs.sort(Comparator.comparingLong(path -> lastModified(path.resolve("index.html"))));
+        for (Path pageDir : pageDirs) {
+            CacheEntry entry = new CacheEntry(pageDir.getFileName().toString());
+            entry.lastAccess = lastModified(pageDir.resolve("index.html"));
+            entry.pageSize = directorySize(pageDir);
+            entry.blobs.addAll(readReferencedBlobs(pageDir));
+            for (String blob : entry.blobs) {
+                blobSizes.put(blob, fileSize(contentStore.resolve(blob)));
+            }
+            entries.put(entry.name, entry);
+        }
+
+        System.out.println("Cache index rebuilt: " + entries.size() + " pages");
+        saveIndex();
+    }
+
+    private Set<String> readReferencedBlobs(Path pageDir) {
+        Set<String> blobs = new HashSet<>();
+        Path resourcesDir = pageDir.resolve("resources");
+        if (!Files.isDirectory(resourcesDir)) {
+            return blobs;
+        }
+
+        try (Stream<Path> paths = Files.list(resourcesDir)) {
+            paths.forEach(path -> {
+                CacheMetadata metadata = CacheMetadata.load(path);
+                if (metadata != null && metadata.getBlob() != null) {
+                    blobs.add(metadata.getBlob());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to read resources of " + pageDir);
+        }
+        return blobs;
+    }
+
+    private void saveIndex() {
+        StringBuilder content = new StringBuilder();
+        synchronized (this) {
+            for (CacheEntry entry : entries.values()) {
+                content.append("P\t").append(entry.name)
+                        .append('\t').append(entry.lastAccess)
+                        .append('\t').append(entry.pageSize)
+                        .append('\t').append(String.join(",", entry.blobs))
+                        .append('\n');
+            }
+            for (Map.Entry<String, Long> blob : blobSizes.entrySet()) {
+                content.append("B\t").append(blob.getKey()).append('\t').append(blob.getValue()).append('\n');
+            }
+        }
+
+        try {
+            Files.createDirectories(root);
+            Path tmp = root.resolve(INDEX_FILE + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                writer.write(content.toString());
+            }
+            Files.move(tmp, root.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to save cache index: " + e.getMessage());
+        }
+    }
+
+    private static boolean isInDirectory(HTTPResponse response, Path pageDir) {
+        String indexPath = response.getHeaders().get("X-Index-Path");
+        return indexPath != null && Paths.get(indexPath).toAbsolutePath().normalize().startsWith(pageDir);
+    }
+
+    private static long directorySize(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile).mapToLong(CacheManager::fileSize).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete: " + path);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to delete: " + dir);
+        }
+    }
+
+    private static class CacheEntry {
+        private final String name;
+        private final Set<String> blobs = new HashSet<>();
+        private long lastAccess;
+        private long pageSize;
+
+        private CacheEntry(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.http.HttpHeaders;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * HTTP caching metadata for one cached page or resource.
+ *
+ * Stored as a properties file: next to the page ("index.html" ->
+ * "index.html.meta"), or per resource URL in the page's cache directory,
+ * pointing at the resource's blob in the ContentStore. Holds the
+ * validators (ETag, Last-Modified) used for conditional revalidation and
+ * the freshness lifetime from Cache-Control max-age or Expires.
+ */
+public class CacheMetadata {
+    public static final String SUFFIX = ".meta";
+
+    private String url;
+    private String blob;
+    private String etag;
+    private String lastModified;
+    private long maxAgeSeconds;
+    private long expiresAt;
+    private boolean noCache;
+    private long fetchedAt;
+
+    public CacheMetadata(String url) {
+        this.url = url;
+        this.maxAgeSeconds = -1;
+        this.expiresAt = -1;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getBlob() {
+        return blob;
+    }
+
+    public void setBlob(String blob) {
+        this.blob = blob;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public static Path metadataPath(Path cachedFile) {
+        return cachedFile.resolveSibling(cachedFile.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Loads metadata from a metadata file
+     *
+     * @return Metadata, or null if there is none
+     */
+    public static CacheMetadata load(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            System.err.println("Failed to read cache metadata: " + path);
+            return null;
+        }
+
+        CacheMetadata metadata = new CacheMetadata(properties.getProperty("url"));
+        metadata.blob = properties.getProperty("blob");
+        metadata.etag = properties.getProperty("etag");
+        metadata.lastModified = properties.getProperty("lastModified");
+        metadata.noCache = Boolean.parseBoolean(properties.getProperty("noCache", "false"));
+        try {
+            metadata.maxAgeSeconds = Long.parseLong(properties.getProperty("maxAge", "-1"));
+            metadata.expiresAt = Long.parseLong(properties.getProperty("expiresAt", "-1"));
+            metadata.fetchedAt = Long.parseLong(properties.getProperty("fetchedAt", "0"));
+        } catch (NumberFormatException e) {
+            // Damaged file, the resource is fetched again
+            System.err.println("Invalid cache metadata: " + path);
+            return null;
+        }
+        return metadata;
+    }
+
+    public void save(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        if (blob != null) {
+            properties.setProperty("blob", blob);
+        }
+        if (etag != null) {
+            properties.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            properties.setProperty("lastModified", lastModified);
+        }
+        properties.setProperty("maxAge", Long.toString(maxAgeSeconds));
+        properties.setProperty("expiresAt", Long.toString(expiresAt));
+        properties.setProperty("noCache", Boolean.toString(noCache));
+        properties.setProperty("fetchedAt", Long.toString(fetchedAt));
+
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            properties.store(writer, null);
+        }
+    }
+
+    /**
+     * @return true if the cached copy can be used without asking the server
+     */
+    public boolean isFresh() {
+        if (noCache) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        if (maxAgeSeconds >= 0) {
+            return now < fetchedAt + maxAgeSeconds * 1000;
+        }
+        return expiresAt >= 0 && now < expiresAt;
+    }
+
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Adds If-None-Match / If-Modified-Since headers for a conditional request
+     */
+    public void addValidators(Map<String, String> requestHeaders) {
+        if (etag != null) {
+            requestHeaders.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            requestHeaders.put("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * Updates metadata from a 200 or 304 response
+     *
+     * @param headers     Response headers
+     * @param notModified true for a 304 response, which keeps validators the server did not resend
+     */
+    public void update(HttpHeaders headers, boolean notModified) {
+        Optional<String> newEtag = headers.firstValue("ETag");
+        Optional<String> newLastModified = headers.firstValue("Last-Modified");
+        if (!notModified) {
+            etag = null;
+            lastModified = null;
+        }
+        newEtag.ifPresent(value -> etag = value);
+        newLastModified.ifPresent(value -> lastModified = value);
+
+        maxAgeSeconds = -1;
+        noCache = false;
+        headers.firstValue("Cache-Control").ifPresent(this::parseCacheControl);
+
+        expiresAt = headers.firstValue("Expires").map(CacheMetadata::parseHttpDate).orElse(-1L);
+        fetchedAt = System.currentTimeMillis();
+    }
+
+    private void parseCacheControl(String cacheControl) {
+        for (String directive : cacheControl.toLowerCase().split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-cache") || directive.equals("no-store")) {
+                noCache = true;
+            } else if (directive.startsWith("max-age=")) {
+                try {
+                    maxAgeSeconds = Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+                } catch (NumberFormatException e) {
+                    maxAgeSeconds = -1;
+                }
+            }
+        }
+    }
+
+    private static long parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // Invalid dates (e.g. "0") mean already expired
+            return 0;
+        }
+    }
+}
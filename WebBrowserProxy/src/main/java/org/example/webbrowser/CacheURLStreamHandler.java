@@ -0,0 +1,133 @@
+package org.example.webbrowser;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Handler for cache:// URLs, which point at files inside a cache root
+ * (cache:///absolute/path/browser_cache/_blobs/ab/abcd.png).
+ *
+ * The WebView loads cached images, CSS and JS through these URLs directly.
+ * Small files are served from the in-memory resource cache, larger ones
+ * are streamed from the file, so nothing is Base64-encoded or copied whole
+ * into the heap. Files are not memory-mapped: a mapping lives until it is
+ * garbage collected, and on Windows a mapped file cannot be deleted or
+ * replaced by cache eviction.
+ */
+public class CacheURLStreamHandler extends URLStreamHandler {
+    public static final String PROTOCOL = "cache";
+
+    // Files up to this size are kept in HotCache.resources()
+    private static final long MAX_HEAP_SIZE = 32 * 1024;
+
+    /**
+     * @return cache:// URL of a file
+     */
+    public static String toURL(Path file) {
+        return PROTOCOL + "://" + file.toAbsolutePath().normalize().toUri().getRawPath();
+    }
+
+    /**
+     * @return File a cache:// URL points at
+     */
+    public static Path toPath(String url) {
+        return Paths.get(URI.create("file://" + URI.create(url).getRawPath())).normalize();
+    }
+
+    /**
+     * @return Content type for a file name, based on its extension
+     */
+    public static String getContentType(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".css")) return "text/css";
+        if (name.endsWith(".js") || name.endsWith(".mjs")) return "application/javascript";
+        if (name.endsWith(".html") || name.endsWith(".htm")) return "text/html";
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".webp")) return "image/webp";
+        if (name.endsWith(".avif")) return "image/avif";
+        if (name.endsWith(".ico")) return "image/x-icon";
+        if (name.endsWith(".woff2")) return "font/woff2";
+        if (name.endsWith(".woff")) return "font/woff";
+        if (name.endsWith(".ttf")) return "font/ttf";
+        String type = URLConnection.guessContentTypeFromName(name);
+        return type != null ? type : "application/octet-stream";
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        return new CacheURLConnection(url);
+    }
+
+    private static class CacheURLConnection extends URLConnection {
+        private Path file;
+        private long size;
+
+        private CacheURLConnection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (connected) {
+                return;
+            }
+
+            file = toPath(url.toString());
+            // Only files inside a cache root can be read through cache://
+            if (!CacheManager.isInCache(file) || !Files.isRegularFile(file)) {
+                throw new FileNotFoundException(url.toString());
+            }
+            size = Files.size(file);
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+
+            if (size <= MAX_HEAP_SIZE) {
+                String key = file.toString();
+                byte[] content = HotCache.resources().get(key);
+                if (content == null) {
+                    content = Files.readAllBytes(file);
+                    HotCache.resources().put(key, content);
+                }
+                return new ByteArrayInputStream(content);
+            }
+
+            // The reader closes the stream, which releases the file
+            return new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+        }
+
+        @Override
+        public String getContentType() {
+            return CacheURLStreamHandler.getContentType(url.getPath());
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                connect();
+                return size;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int getContentLength() {
+            long length = getContentLengthLong();
+            return length > Integer.MAX_VALUE ? -1 : (int) length;
+        }
+    }
+}
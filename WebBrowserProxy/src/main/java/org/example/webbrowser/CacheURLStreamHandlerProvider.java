@@ -0,0 +1,14 @@
+package org.example.webbrowser;
+
+import java.net.URLStreamHandler;
+import java.net.spi.URLStreamHandlerProvider;
+
+/**
+ * Registers the cache:// protocol (see META-INF/services)
+ */
+public class CacheURLStreamHandlerProvider extends URLStreamHandlerProvider {
+    @Override
+    public URLStreamHandler createURLStreamHandler(String protocol) {
+        return CacheURLStreamHandler.PROTOCOL.equals(protocol) ? new CacheURLStreamHandler() : null;
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decoder for one HTTP content coding (gzip, deflate, br, ...).
+ *
+ * gzip and deflate are built in. Other codings are plugged in with
+ * ContentDecoders.register, or as a service provider listed in
+ * META-INF/services/org.example.webbrowser.ContentDecoder.
+ */
+public interface ContentDecoder {
+    /**
+     * @return Coding name as used in Accept-Encoding and Content-Encoding, e.g. "br"
+     */
+    String getEncoding();
+
+    /**
+     * Wraps a stream of encoded bytes
+     *
+     * @param encoded Body as received from the server
+     * @return Stream of decoded bytes
+     */
+    InputStream decode(InputStream encoded) throws IOException;
+}
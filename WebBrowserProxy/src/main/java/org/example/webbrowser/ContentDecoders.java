@@ -0,0 +1,258 @@
+package org.example.webbrowser;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Registry of content decoders used for compressed transfers.
+ *
+ * The HTTP client advertises every registered coding in Accept-Encoding
+ * and decodes response bodies as a stream, in the reverse order of the
+ * Content-Encoding list. Bytes received on the wire and bytes after
+ * decoding are counted for the whole process.
+ */
+public final class ContentDecoders {
+    private static final Map<String, ContentDecoder> DECODERS = new ConcurrentHashMap<>();
+    private static final LongAdder WIRE_BYTES = new LongAdder();
+    private static final LongAdder DECODED_BYTES = new LongAdder();
+
+    static {
+        register(new GzipDecoder("gzip"));
+        register(new GzipDecoder("x-gzip"));
+        register(new DeflateDecoder());
+        for (ContentDecoder decoder : ServiceLoader.load(ContentDecoder.class)) {
+            register(decoder);
+        }
+    }
+
+    private ContentDecoders() {
+    }
+
+    /**
+     * Adds or replaces the decoder for a coding
+     */
+    public static void register(ContentDecoder decoder) {
+        DECODERS.put(decoder.getEncoding().toLowerCase(Locale.ROOT), decoder);
+    }
+
+    public static boolean isSupported(String encoding) {
+        return DECODERS.containsKey(encoding.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return Accept-Encoding header value listing the registered codings
+     */
+    public static String getAcceptEncoding() {
+        List<String> encodings = new ArrayList<>();
+        for (String encoding : List.of("br", "gzip", "deflate")) {
+            if (DECODERS.containsKey(encoding)) {
+                encodings.add(encoding);
+            }
+        }
+        for (String encoding : DECODERS.keySet()) {
+            if (!encodings.contains(encoding) && !encoding.equals("x-gzip")) {
+                encodings.add(encoding);
+            }
+        }
+        return String.join(", ", encodings);
+    }
+
+    /**
+     * Wraps a response body. Decoders are created on the first read, so
+     * this does not block on the network.
+     *
+     * @param contentEncoding Content-Encoding header value, or null
+     * @param body            Body as received from the server
+     */
+    public static DecodingInputStream decode(String contentEncoding, InputStream body) {
+        return new DecodingInputStream(contentEncoding, body);
+    }
+
+    public static long getWireBytes() {
+        return WIRE_BYTES.sum();
+    }
+
+    public static long getDecodedBytes() {
+        return DECODED_BYTES.sum();
+    }
+
+    /**
+     * @return Short statistics line for logging
+     */
+    public static String getStats() {
+        long wire = getWireBytes();
+        long decoded = getDecodedBytes();
+        return String.format("wire=%d, decoded=%d, ratio=%.2f", wire, decoded,
+                wire == 0 ? 1.0 : (double) decoded / wire);
+    }
+
+    /**
+     * Decoded response body with byte counts on both sides of the decoders
+     */
+    public static class DecodingInputStream extends InputStream {
+        private final String contentEncoding;
+        private final InputStream wire;
+        private InputStream decoded;
+        private long wireBytes;
+        private long decodedBytes;
+
+        private DecodingInputStream(String contentEncoding, InputStream body) {
+            this.contentEncoding = contentEncoding;
+            this.wire = new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        countWire(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int count = super.read(buffer, offset, length);
+                    if (count > 0) {
+                        countWire(count);
+                    }
+                    return count;
+                }
+            };
+        }
+
+        /**
+         * @return Bytes received from the server so far
+         */
+        public long getWireBytes() {
+            return wireBytes;
+        }
+
+        /**
+         * @return Bytes returned to the reader so far
+         */
+        public long getDecodedBytes() {
+            return decodedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = decoded().read();
+            if (b >= 0) {
+                countDecoded(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = decoded().read(buffer, offset, length);
+            if (count > 0) {
+                countDecoded(count);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoded != null) {
+                decoded.close();
+            }
+            wire.close();
+        }
+
+        private InputStream decoded() throws IOException {
+            if (decoded == null) {
+                InputStream stream = wire;
+                if (contentEncoding != null) {
+                    // Codings are listed in the order they were applied
+                    String[] encodings = contentEncoding.split(",");
+                    for (int i = encodings.length - 1; i >= 0; i--) {
+                        String encoding = encodings[i].trim().toLowerCase(Locale.ROOT);
+                        if (encoding.isEmpty() || encoding.equals("identity")) {
+                            continue;
+                        }
+                        ContentDecoder decoder = DECODERS.get(encoding);
+                        if (decoder == null) {
+                            throw new IOException("Unsupported Content-Encoding: " + encoding);
+                        }
+                        stream = decoder.decode(stream);
+                    }
+                }
+                decoded = stream;
+            }
+            return decoded;
+        }
+
+        private void countWire(int count) {
+            wireBytes += count;
+            WIRE_BYTES.add(count);
+        }
+
+        private void countDecoded(int count) {
+            decodedBytes += count;
+            DECODED_BYTES.add(count);
+        }
+    }
+
+    private static class GzipDecoder implements ContentDecoder {
+        private final String encoding;
+
+        private GzipDecoder(String encoding) {
+            this.encoding = encoding;
+        }
+
+        @Override
+        public String getEncoding() {
+            return encoding;
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            return new GZIPInputStream(encoded, 8 * 1024);
+        }
+    }
+
+    /**
+     * "deflate" is meant to be zlib-wrapped, but some servers send a raw
+     * deflate stream; the zlib header is checked to tell them apart
+     */
+    private static class DeflateDecoder implements ContentDecoder {
+        @Override
+        public String getEncoding() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            BufferedInputStream buffered = new BufferedInputStream(encoded);
+            buffered.mark(2);
+            int cmf = buffered.read();
+            int flg = buffered.read();
+            buffered.reset();
+
+            boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(buffered, inflater, 8 * 1024) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store for downloaded resources, shared by all cached domains.
+ *
+ * Each blob is stored once under the SHA-256 of its bytes
+ * ("ab/abcdef...0123.css"), so identical files (jQuery, common fonts,
+ * analytics scripts) downloaded for different pages take disk space once.
+ *
+ * A fetch uses blobs through a Lease: leased blobs are pinned and are not
+ * deleted by cache eviction until the fetch has recorded its page.
+ */
+public class ContentStore {
+    public static final String DEFAULT_DIRECTORY = "_blobs";
+
+    private final Path root;
+    // Blob name -> number of leases holding it
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    public ContentStore(Path root) {
+        this.root = root;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param blobName Name returned by store()
+     * @return Path of the blob on disk
+     */
+    public Path resolve(String blobName) {
+        return root.resolve(blobName);
+    }
+
+    public boolean contains(String blobName) {
+        return blobName != null && Files.exists(resolve(blobName));
+    }
+
+    /**
+     * Streams content into the store, hashing it on the way
+     *
+     * @param source     Content source
+     * @param extension  File extension kept on the blob (e.g. ".css"), so it is served with the right type
+     * @param bufferSize Copy buffer size
+     * @param maxSize    Size cap; larger content is rejected
+     * @return Blob name, relative to the store root
+     */
+    public String store(ReadableByteChannel source, String extension, int bufferSize, long maxSize) throws IOException {
+        return store(source, extension, bufferSize, maxSize, null);
+    }
+
+    private String store(ReadableByteChannel source, String extension, int bufferSize, long maxSize,
+                         Lease lease) throws IOException {
+        Path tmpDir = root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+        Path partFile = Files.createTempFile(tmpDir, "blob", ".part");
+
+        MessageDigest digest = newDigest();
+        try (FileChannel target = FileChannel.open(partFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            long total = 0;
+
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                total += buffer.remaining();
+                if (total > maxSize) {
+                    throw new IOException("Resource exceeds size limit of " + maxSize + " bytes");
+                }
+                digest.update(buffer.array(), buffer.position(), buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+
+        String hash = toHex(digest.digest());
+        String blobName = hash.substring(0, 2) + "/" + hash + extension;
+        Path blobPath = resolve(blobName);
+
+        // Pinned before the existence check, so eviction cannot delete a blob that is reused
+        if (lease != null) {
+            lease.pin(blobName);
+        }
+        if (Files.exists(blobPath)) {
+            // Same content is already stored
+            Files.delete(partFile);
+        } else {
+            Files.createDirectories(blobPath.getParent());
+            Files.move(partFile, blobPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        return blobName;
+    }
+
+    /**
+     * @return A new lease for the blobs of one fetch
+     */
+    public Lease openLease() {
+        return new Lease();
+    }
+
+    /**
+     * Deletes a blob unless a lease holds it
+     *
+     * @return true if the blob was deleted or did not exist
+     */
+    public synchronized boolean deleteUnpinned(String blobName) throws IOException {
+        if (pins.containsKey(blobName)) {
+            return false;
+        }
+        Files.deleteIfExists(resolve(blobName));
+        return true;
+    }
+
+    private synchronized void addPin(String blobName) {
+        pins.merge(blobName, 1, Integer::sum);
+    }
+
+    private synchronized void removePin(String blobName) {
+        pins.computeIfPresent(blobName, (name, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Blobs used by a fetch that has not recorded its page yet
+     */
+    public class Lease implements AutoCloseable {
+        private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+
+        private Lease() {
+        }
+
+        public ContentStore getStore() {
+            return ContentStore.this;
+        }
+
+        /**
+         * Stores content like ContentStore.store and pins the resulting blob
+         */
+        public String store(ReadableByteChannel source, String extension, int bufferSize, long maxSize) throws IOException {
+            return ContentStore.this.store(source, extension, bufferSize, maxSize, this);
+        }
+
+        /**
+         * Pins a stored blob for reuse
+         *
+         * @return true if the blob exists
+         */
+        public boolean acquire(String blobName) {
+            if (blobName == null) {
+                return false;
+            }
+            pin(blobName);
+            return contains(blobName);
+        }
+
+        private void pin(String blobName) {
+            if (blobs.add(blobName)) {
+                addPin(blobName);
+            }
+        }
+
+        /**
+         * Releases every blob, once the page that uses them is recorded
+         */
+        @Override
+        public void close() {
+            for (String blobName : blobs) {
+                removePin(blobName);
+            }
+            blobs.clear();
+        }
+    }
+
+    /**
+     * @return Hex SHA-256 of a string, used to name per-URL entries
+     */
+    public static String hash(String value) {
+        return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
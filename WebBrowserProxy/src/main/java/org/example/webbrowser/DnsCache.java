@@ -0,0 +1,164 @@
+package org.example.webbrowser;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process DNS cache with time-bounded entries.
+ *
+ * Host names are resolved on a small thread pool, so the hosts of a page
+ * can be resolved in parallel before its resources are requested. Lookups
+ * of the same host share one resolution. Entries live as long as the
+ * JVM's own address cache keeps them (networkaddress.cache.ttl), so the
+ * HTTP client finds resolved hosts there; failed lookups are cached for
+ * networkaddress.cache.negative.ttl, so dead hosts are not warmed up
+ * again; the requests themselves still resolve the host.
+ */
+public class DnsCache {
+    private static final int RESOLVER_THREADS = 8;
+    private static final int MAX_ENTRIES = 512;
+    private static final long DEFAULT_TTL_SECONDS = 30;
+    private static final long DEFAULT_NEGATIVE_TTL_SECONDS = 10;
+    private static final long MAX_TTL_SECONDS = 300;
+
+    private static final DnsCache INSTANCE = new DnsCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService resolverExecutor;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private DnsCache() {
+        this.ttlMillis = readTtl("networkaddress.cache.ttl", DEFAULT_TTL_SECONDS) * 1000;
+        this.negativeTtlMillis = readTtl("networkaddress.cache.negative.ttl", DEFAULT_NEGATIVE_TTL_SECONDS) * 1000;
+        this.resolverExecutor = Executors.newFixedThreadPool(RESOLVER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "dns-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static DnsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolves a host, using the cached result while it is valid
+     *
+     * @return Future completed with the addresses of the host, or failed with UnknownHostException
+     */
+    public CompletableFuture<List<InetAddress>> resolve(String host) {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            hits.increment();
+            return entry.future;
+        }
+
+        Entry created = new Entry();
+        Entry existing = entry == null ? entries.putIfAbsent(key, created)
+                : entries.replace(key, entry, created) ? null : entries.get(key);
+        if (existing != null) {
+            hits.increment();
+            return existing.future;
+        }
+
+        misses.increment();
+        purgeExpired(now);
+        resolverExecutor.execute(() -> {
+            try {
+                List<InetAddress> addresses = List.of(InetAddress.getAllByName(key));
+                created.expiresAt = System.currentTimeMillis() + ttlMillis;
+                created.future.complete(addresses);
+            } catch (UnknownHostException | SecurityException e) {
+                failures.increment();
+                created.expiresAt = System.currentTimeMillis() + negativeTtlMillis;
+                created.future.completeExceptionally(e);
+            }
+        });
+        return created.future;
+    }
+
+    /**
+     * Resolves hosts in parallel
+     *
+     * @return Future completed once every lookup has finished, successful or not
+     */
+    public CompletableFuture<Void> prefetch(Collection<String> hosts) {
+        List<CompletableFuture<?>> lookups = new ArrayList<>();
+        for (String host : hosts) {
+            lookups.add(resolve(host).handle((addresses, error) -> null));
+        }
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return true if the last lookup of the host failed and that result is still valid
+     */
+    public boolean isUnresolvable(String host) {
+        Entry entry = entries.get(host.toLowerCase(Locale.ROOT));
+        return entry != null && !entry.isExpired(System.currentTimeMillis())
+                && entry.future.isCompletedExceptionally();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Short statistics line for logging
+     */
+    public String getStats() {
+        return "entries=" + entries.size() + ", hits=" + hits.sum() + ", misses=" + misses.sum()
+                + ", failures=" + failures.sum();
+    }
+
+    private void purgeExpired(long now) {
+        if (entries.size() <= MAX_ENTRIES) {
+            return;
+        }
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    /**
+     * @return TTL in seconds from a security property; caching forever is capped
+     */
+    private static long readTtl(String property, long defaultSeconds) {
+        String value = Security.getProperty(property);
+        if (value == null) {
+            return defaultSeconds;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? MAX_TTL_SECONDS : Math.min(seconds, MAX_TTL_SECONDS);
+        } catch (NumberFormatException e) {
+            return defaultSeconds;
+        }
+    }
+
+    private static class Entry {
+        private final CompletableFuture<List<InetAddress>> future = new CompletableFuture<>();
+        // Set when the lookup finishes, lookups in progress never expire
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,687 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Single-pass scanner and rewriter for resource references in HTML.
+ *
+ * One scan over the document finds stylesheet links, scripts, images,
+ * icons, inline url() references (backgrounds, fonts, @import) and the
+ * position of the head tag. The rewritten document is then emitted
+ * straight to a Writer, copying the unchanged parts of the source.
+ *
+ * Every reference gets a download priority from its kind, its position
+ * in the document and attributes such as async, defer and loading="lazy".
+ *
+ * For responsive images (srcset, sizes and picture sources) only the
+ * candidate that best fits the viewport is referenced; the src, srcset and
+ * source srcset values of the image all point at that one file.
+ *
+ * Links with rel="preconnect" or rel="dns-prefetch" are collected as
+ * connection hints. The position of the meta charset declaration is kept,
+ * so the written document can declare the charset it is saved in.
+ */
+public class HTMLResourceRewriter {
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".gif", ".svg", ".webp", ".ico", ".bmp"};
+    private static final String[] BACKGROUND_EXTENSIONS = {".jpg", ".jpeg", ".png", ".gif", ".svg", ".webp"};
+    private static final String[] FONT_EXTENSIONS = {".woff", ".woff2", ".ttf", ".eot", ".otf"};
+    private static final int ABOVE_THE_FOLD_IMAGES = 6;
+
+    private final String html;
+    private final Viewport viewport;
+    private final List<ResourceReference> references;
+    private final List<String> preconnectHints = new ArrayList<>();
+    private final List<String> dnsPrefetchHints = new ArrayList<>();
+    private int headTagEnd;
+    private int htmlTagEnd;
+    private int doctypeEnd;
+    private boolean hasBaseTag;
+    private int charsetStart;
+    private int charsetEnd;
+    private boolean inBody;
+    private int imageCount;
+    private boolean inPicture;
+    private final List<int[]> pictureSources = new ArrayList<>();
+    private String pictureCandidate;
+
+    public HTMLResourceRewriter(String html) {
+        this(html, Viewport.current());
+    }
+
+    /**
+     * @param viewport Viewport responsive images are selected for
+     */
+    public HTMLResourceRewriter(String html, Viewport viewport) {
+        this.html = html;
+        this.viewport = viewport;
+        this.references = new ArrayList<>();
+        this.headTagEnd = -1;
+        this.htmlTagEnd = -1;
+        this.doctypeEnd = -1;
+        this.charsetStart = -1;
+        scan();
+    }
+
+    /**
+     * @return Resource references in document order
+     */
+    public List<ResourceReference> getReferences() {
+        return references;
+    }
+
+    /**
+     * @return href values of link rel="preconnect" tags, as written
+     */
+    public List<String> getPreconnectHints() {
+        return preconnectHints;
+    }
+
+    /**
+     * @return href values of link rel="dns-prefetch" tags, as written
+     */
+    public List<String> getDnsPrefetchHints() {
+        return dnsPrefetchHints;
+    }
+
+    public boolean hasBaseTag() {
+        return hasBaseTag;
+    }
+
+    /**
+     * @return true if write would reproduce the source unchanged, so the
+     * original bytes can be used instead
+     */
+    public boolean isUnchanged(Function<ResourceReference, String> localPathLookup, String baseTag) {
+        if (baseTag != null && !hasBaseTag && headTagEnd >= 0) {
+            return false;
+        }
+        for (ResourceReference reference : references) {
+            if (localPathLookup.apply(reference) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the document with every reference replaced by its local path
+     *
+     * @param out            Destination
+     * @param localPathLookup Returns the local path for a reference, or null to keep the original URL
+     * @param baseTag        Tag inserted right after the head tag, or null
+     */
+    public void write(Writer out, Function<ResourceReference, String> localPathLookup, String baseTag) throws IOException {
+        write(out, localPathLookup, baseTag, null);
+    }
+
+    /**
+     * Writes the document with every reference replaced by its local path,
+     * declaring the charset the output is encoded in: the meta charset
+     * declaration is changed to it, or a meta charset tag is inserted if the
+     * document has none (after the head tag, else after the html tag or doctype)
+     *
+     * @param charset Charset of the output, or null to keep the declaration as it is
+     */
+    public void write(Writer out, Function<ResourceReference, String> localPathLookup, String baseTag,
+                      Charset charset) throws IOException {
+        String label = charset == null ? null : charset.name().toLowerCase(Locale.ROOT);
+
+        // Changes to the head, in document order
+        List<Edit> edits = new ArrayList<>(3);
+        if (baseTag != null && !hasBaseTag && headTagEnd >= 0) {
+            edits.add(new Edit(headTagEnd, headTagEnd, "\n" + baseTag));
+        }
+        if (label != null && charsetStart < 0) {
+            int position = getCharsetInsertPosition();
+            String meta = "<meta charset=\"" + label + "\">";
+            edits.add(new Edit(position, position, position > 0 ? "\n" + meta : meta + "\n"));
+        }
+        if (label != null && charsetStart >= 0 && !html.substring(charsetStart, charsetEnd).equalsIgnoreCase(label)) {
+            edits.add(new Edit(charsetStart, charsetEnd, label));
+        }
+        edits.sort(Comparator.comparingInt(edit -> edit.start));
+
+        int position = 0;
+        int nextEdit = 0;
+        for (ResourceReference reference : references) {
+            while (nextEdit < edits.size() && edits.get(nextEdit).start <= reference.getStart()) {
+                position = edits.get(nextEdit++).write(out, position);
+            }
+
+            String localPath = localPathLookup.apply(reference);
+            if (localPath != null) {
+                out.write(html, position, reference.getStart() - position);
+                out.write(localPath);
+                position = reference.getEnd();
+            }
+        }
+        while (nextEdit < edits.size()) {
+            position = edits.get(nextEdit++).write(out, position);
+        }
+
+        out.write(html, position, html.length() - position);
+    }
+
+    /**
+     * Documents without a head get the declaration after the html tag, or
+     * after the doctype so the page is not rendered in quirks mode
+     */
+    private int getCharsetInsertPosition() {
+        if (headTagEnd >= 0) {
+            return headTagEnd;
+        }
+        if (htmlTagEnd >= 0) {
+            return htmlTagEnd;
+        }
+        return Math.max(doctypeEnd, 0);
+    }
+
+    private void scan() {
+        int length = html.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = html.charAt(i);
+
+            if (c == '<') {
+                i = scanTag(i);
+            } else if ((c == 'u' || c == 'U') && html.regionMatches(true, i, "url(", 0, 4)) {
+                i = scanCssUrl(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Handles a tag starting at '<'. Returns the position right after the tag name,
+     * so url() references inside attributes (inline styles) are still found.
+     */
+    private int scanTag(int tagStart) {
+        int nameStart = tagStart + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < html.length() && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == nameStart) {
+            if (html.regionMatches(true, nameStart, "/picture", 0, "/picture".length())) {
+                endPicture();
+            } else if (doctypeEnd < 0 && html.regionMatches(true, nameStart, "!doctype", 0, "!doctype".length())) {
+                doctypeEnd = findTagEnd(nameStart);
+            }
+            return tagStart + 1;
+        }
+
+        String name = html.substring(nameStart, nameEnd).toLowerCase();
+        int tagEnd = findTagEnd(nameEnd);
+
+        switch (name) {
+            case "html":
+                if (htmlTagEnd < 0) {
+                    htmlTagEnd = tagEnd;
+                }
+                break;
+            case "head":
+                if (headTagEnd < 0) {
+                    headTagEnd = tagEnd;
+                }
+                break;
+            case "base":
+                hasBaseTag = true;
+                break;
+            case "meta":
+                // Readers only look for the declaration near the start
+                if (charsetStart < 0 && tagStart < HtmlCharset.PRESCAN_LENGTH) {
+                    scanMetaCharset(nameEnd, tagEnd);
+                }
+                break;
+            case "body":
+                inBody = true;
+                break;
+            case "link":
+                scanLink(nameEnd, tagEnd);
+                break;
+            case "script":
+                addAttributeReference(nameEnd, tagEnd, "src", "js", "script", new String[]{".js"},
+                        scriptPriority(nameEnd, tagEnd));
+                break;
+            case "picture":
+                endPicture();
+                inPicture = true;
+                break;
+            case "source":
+                if (inPicture) {
+                    scanPictureSource(nameEnd, tagEnd);
+                }
+                break;
+            case "img":
+                scanImage(nameEnd, tagEnd);
+                break;
+            default:
+                break;
+        }
+
+        return nameEnd;
+    }
+
+    /**
+     * Remembers the charset value of a meta charset or http-equiv declaration
+     */
+    private void scanMetaCharset(int attributesStart, int tagEnd) {
+        int[] value = findAttribute(attributesStart, tagEnd, "charset");
+        if (value == null) {
+            int[] content = findAttribute(attributesStart, tagEnd, "content");
+            if (content == null) {
+                return;
+            }
+            int label = html.substring(content[0], content[1]).toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (label < 0) {
+                return;
+            }
+            int start = content[0] + label + "charset=".length();
+            int end = start;
+            while (end < content[1] && !Character.isWhitespace(html.charAt(end)) && html.charAt(end) != ';') {
+                end++;
+            }
+            value = new int[]{start, end};
+        }
+
+        if (value[0] < value[1]) {
+            charsetStart = value[0];
+            charsetEnd = value[1];
+        }
+    }
+
+    private void scanLink(int attributesStart, int tagEnd) {
+        int[] rel = findAttribute(attributesStart, tagEnd, "rel");
+        String relValue = rel == null ? "" : html.substring(rel[0], rel[1]).trim().toLowerCase();
+
+        if (relValue.contains("preconnect") || relValue.contains("dns-prefetch")) {
+            String href = rawAttributeValue(attributesStart, tagEnd, "href");
+            if (href != null && !href.isBlank()) {
+                (relValue.contains("preconnect") ? preconnectHints : dnsPrefetchHints).add(href.trim());
+            }
+        } else if (relValue.equals("icon") || relValue.equals("shortcut icon") || relValue.equals("apple-touch-icon")) {
+            addAttributeReference(attributesStart, tagEnd, "href", "images", "icon", null,
+                    ResourcePriority.LOWEST);
+        } else {
+            addAttributeReference(attributesStart, tagEnd, "href", "css", "link", new String[]{".css"},
+                    ResourcePriority.CRITICAL);
+        }
+    }
+
+    /**
+     * Remembers a picture source; the first one whose media and type match
+     * supplies the candidate for the picture's img
+     */
+    private void scanPictureSource(int attributesStart, int tagEnd) {
+        int[] srcset = findAttribute(attributesStart, tagEnd, "srcset");
+        if (srcset == null || srcset[0] == srcset[1]) {
+            return;
+        }
+        pictureSources.add(srcset);
+
+        if (pictureCandidate == null
+                && ResponsiveImages.matchesMedia(rawAttributeValue(attributesStart, tagEnd, "media"), viewport)
+                && ResponsiveImages.isSupportedType(rawAttributeValue(attributesStart, tagEnd, "type"))) {
+            pictureCandidate = ResponsiveImages.select(html.substring(srcset[0], srcset[1]),
+                    rawAttributeValue(attributesStart, tagEnd, "sizes"), viewport);
+        }
+    }
+
+    /**
+     * Picks the image candidate for the viewport and points src, srcset and
+     * the picture's sources at it. Every image is reported; only those with a
+     * known image extension are marked for download.
+     */
+    private void scanImage(int attributesStart, int tagEnd) {
+        ResourcePriority priority = imagePriority(attributesStart, tagEnd);
+        int[] src = findAttribute(attributesStart, tagEnd, "src");
+        int[] srcset = findAttribute(attributesStart, tagEnd, "srcset");
+
+        String url = inPicture ? pictureCandidate : null;
+        if (url == null && srcset != null) {
+            url = ResponsiveImages.select(html.substring(srcset[0], srcset[1]),
+                    rawAttributeValue(attributesStart, tagEnd, "sizes"), viewport);
+        }
+        if (url == null && src != null) {
+            url = html.substring(src[0], src[1]);
+        }
+
+        List<int[]> values = new ArrayList<>(pictureSources);
+        endPicture();
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+        boolean downloadable = containsAny(url, IMAGE_EXTENSIONS);
+
+        if (src != null && src[0] != src[1]) {
+            values.add(src);
+        }
+        if (srcset != null && srcset[0] != srcset[1]) {
+            values.add(srcset);
+        }
+        values.sort((a, b) -> Integer.compare(a[0], b[0]));
+        for (int[] value : values) {
+            addReference(value[0], value[1], url, "images", "img", priority, downloadable);
+        }
+    }
+
+    private void endPicture() {
+        inPicture = false;
+        pictureSources.clear();
+        pictureCandidate = null;
+    }
+
+    /**
+     * Scripts in the head block rendering unless they are async, deferred or modules
+     */
+    private ResourcePriority scriptPriority(int attributesStart, int tagEnd) {
+        int[] type = findAttribute(attributesStart, tagEnd, "type");
+        boolean module = type != null && html.substring(type[0], type[1]).trim().equalsIgnoreCase("module");
+        if (module || findAttribute(attributesStart, tagEnd, "async") != null
+                || findAttribute(attributesStart, tagEnd, "defer") != null) {
+            return ResourcePriority.LOW;
+        }
+        return inBody ? ResourcePriority.HIGH : ResourcePriority.CRITICAL;
+    }
+
+    /**
+     * The first images of the document are likely visible without scrolling
+     */
+    private ResourcePriority imagePriority(int attributesStart, int tagEnd) {
+        String fetchPriority = attributeValue(attributesStart, tagEnd, "fetchpriority");
+        String loading = attributeValue(attributesStart, tagEnd, "loading");
+        imageCount++;
+
+        if (fetchPriority.equals("high")) {
+            return ResourcePriority.HIGH;
+        }
+        if (fetchPriority.equals("low") || loading.equals("lazy")) {
+            return ResourcePriority.LOWEST;
+        }
+        return imageCount <= ABOVE_THE_FOLD_IMAGES ? ResourcePriority.MEDIUM : ResourcePriority.LOW;
+    }
+
+    private String attributeValue(int attributesStart, int tagEnd, String attribute) {
+        int[] value = findAttribute(attributesStart, tagEnd, attribute);
+        return value == null ? "" : html.substring(value[0], value[1]).trim().toLowerCase();
+    }
+
+    /**
+     * @return Attribute value as written, or null if the attribute is missing
+     */
+    private String rawAttributeValue(int attributesStart, int tagEnd, String attribute) {
+        int[] value = findAttribute(attributesStart, tagEnd, attribute);
+        return value == null ? null : html.substring(value[0], value[1]);
+    }
+
+    private void addAttributeReference(int attributesStart, int tagEnd, String attribute,
+                                       String folder, String type, String[] extensions,
+                                       ResourcePriority priority) {
+        int[] value = findAttribute(attributesStart, tagEnd, attribute);
+        if (value == null || value[0] == value[1]) {
+            return;
+        }
+
+        String url = html.substring(value[0], value[1]);
+        if (extensions == null || containsAny(url, extensions)) {
+            addReference(value[0], value[1], url, folder, type, priority);
+        }
+    }
+
+    /**
+     * Handles url(...) starting at 'u'
+     */
+    private int scanCssUrl(int start) {
+        int i = start + 4;
+        int length = html.length();
+
+        while (i < length && Character.isWhitespace(html.charAt(i))) {
+            i++;
+        }
+        if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+            i++;
+        }
+
+        int valueStart = i;
+        while (i < length && html.charAt(i) != ')' && html.charAt(i) != '"' && html.charAt(i) != '\'') {
+            i++;
+        }
+        int valueEnd = i;
+
+        if (valueEnd == valueStart || valueEnd >= length) {
+            return start + 4;
+        }
+
+        String url = html.substring(valueStart, valueEnd);
+        if (containsAny(url, new String[]{".css"}) && isImportRule(start)) {
+            addReference(valueStart, valueEnd, url, "css", "import", ResourcePriority.CRITICAL);
+        } else if (containsAny(url, BACKGROUND_EXTENSIONS)) {
+            addReference(valueStart, valueEnd, url, "images", "bg", ResourcePriority.LOW);
+        } else if (containsAny(url, FONT_EXTENSIONS)) {
+            addReference(valueStart, valueEnd, url, "fonts", "font", ResourcePriority.HIGH);
+        }
+
+        return valueEnd;
+    }
+
+    private boolean isImportRule(int urlStart) {
+        int i = urlStart - 1;
+        while (i >= 0 && Character.isWhitespace(html.charAt(i))) {
+            i--;
+        }
+        int importStart = i - "@import".length() + 1;
+        return importStart >= 0 && html.regionMatches(true, importStart, "@import", 0, "@import".length());
+    }
+
+    private void addReference(int start, int end, String url, String folder, String type,
+                              ResourcePriority priority) {
+        addReference(start, end, url, folder, type, priority, true);
+    }
+
+    private void addReference(int start, int end, String url, String folder, String type,
+                              ResourcePriority priority, boolean downloadable) {
+        // References never overlap (e.g. url() inside an already matched src value)
+        if (!references.isEmpty() && start < references.get(references.size() - 1).getEnd()) {
+            return;
+        }
+        references.add(new ResourceReference(start, end, url, folder, type, priority, downloadable));
+    }
+
+    /**
+     * Finds the position right after the closing '>' of a tag, ignoring quoted values
+     */
+    private int findTagEnd(int from) {
+        char quote = 0;
+        for (int i = from; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        return html.length();
+    }
+
+    /**
+     * Finds an attribute value inside a tag
+     *
+     * @return {start, end} of the value (empty for attributes without a value),
+     * or null if the attribute is missing
+     */
+    private int[] findAttribute(int from, int tagEnd, String attribute) {
+        int i = from;
+        int end = tagEnd - 1;
+
+        while (i < end) {
+            while (i < end && (Character.isWhitespace(html.charAt(i)) || html.charAt(i) == '/')) {
+                i++;
+            }
+
+            int nameStart = i;
+            while (i < end && !Character.isWhitespace(html.charAt(i))
+                    && html.charAt(i) != '=' && html.charAt(i) != '>' && html.charAt(i) != '/') {
+                i++;
+            }
+            int nameEnd = i;
+            if (nameEnd == nameStart) {
+                i++;
+                continue;
+            }
+
+            while (i < end && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i >= end || html.charAt(i) != '=') {
+                if (nameEnd - nameStart == attribute.length()
+                        && html.regionMatches(true, nameStart, attribute, 0, attribute.length())) {
+                    return new int[]{nameEnd, nameEnd};
+                }
+                continue;
+            }
+            i++;
+            while (i < end && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+
+            int valueStart;
+            int valueEnd;
+            if (i < end && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                char quote = html.charAt(i);
+                valueStart = i + 1;
+                valueEnd = html.indexOf(quote, valueStart);
+                if (valueEnd < 0 || valueEnd > end) {
+                    return null;
+                }
+                i = valueEnd + 1;
+            } else {
+                valueStart = i;
+                while (i < end && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                    i++;
+                }
+                valueEnd = i;
+            }
+
+            if (nameEnd - nameStart == attribute.length()
+                    && html.regionMatches(true, nameStart, attribute, 0, attribute.length())) {
+                return new int[]{valueStart, valueEnd};
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean containsAny(String url, String[] extensions) {
+        String lower = url.toLowerCase();
+        for (String extension : extensions) {
+            if (lower.contains(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replacement of a span of the document
+     */
+    private class Edit {
+        private final int start;
+        private final int end;
+        private final String text;
+
+        private Edit(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        /**
+         * Writes the document up to the edit and the replacement
+         *
+         * @return Position after the replaced span
+         */
+        private int write(Writer out, int position) throws IOException {
+            out.write(html, position, start - position);
+            out.write(text);
+            return end;
+        }
+    }
+
+    /**
+     * A resource URL found in the document, with its position in the source
+     */
+    public static class ResourceReference {
+        private final int start;
+        private final int end;
+        private final String url;
+        private final String folder;
+        private final String type;
+        private final ResourcePriority priority;
+        private final boolean downloadable;
+
+        public ResourceReference(int start, int end, String url, String folder, String type) {
+            this(start, end, url, folder, type, ResourcePriority.LOW);
+        }
+
+        public ResourceReference(int start, int end, String url, String folder, String type,
+                                 ResourcePriority priority) {
+            this(start, end, url, folder, type, priority, true);
+        }
+
+        ResourceReference(int start, int end, String url, String folder, String type,
+                          ResourcePriority priority, boolean downloadable) {
+            this.start = start;
+            this.end = end;
+            this.url = url;
+            this.folder = folder;
+            this.type = type;
+            this.priority = priority;
+            this.downloadable = downloadable;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getFolder() {
+            return folder;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public ResourcePriority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return false for images without a known image extension, which are
+         * reported but keep their original URL
+         */
+        public boolean isDownloadable() {
+            return downloadable;
+        }
+    }
+}
@@ -1,42 +1,118 @@
 package org.example.webbrowser;
 
+import java.util.Arrays;
+
+/**
+ * Dispatches HTTP responses to their handlers.
+ *
+ * Handlers are registered per status code (404) or per status class
+ * (4 for 4xx) and looked up in a table by status code, so the cost of
+ * process() does not grow with the number of handlers. A handler for an
+ * exact code wins over the handler of its class. Interceptors run before
+ * and after every response.
+ *
+ * The chain is stateless apart from its registrations; getShared()
+ * returns the instance used by the browser and the local server.
+ */
 public class HTTPHandlerChain {
-    
-    private HTTPResponseHandler firstHandler;
+    private static final int MAX_STATUS = 600;
+
+    // Copy-on-write tables, replaced on registration
+    private volatile HTTPResponseHandler[] statusHandlers;
+    private volatile HTTPResponseHandler[] classHandlers;
+    private volatile HTTPInterceptor[] interceptors;
 
     public HTTPHandlerChain() {
+        this.statusHandlers = new HTTPResponseHandler[MAX_STATUS];
+        this.classHandlers = new HTTPResponseHandler[MAX_STATUS / 100];
+        this.interceptors = new HTTPInterceptor[0];
         buildDefaultChain();
     }
-    
+
+    /**
+     * @return Chain shared by the whole application
+     */
+    public static HTTPHandlerChain getShared() {
+        return SharedHolder.INSTANCE;
+    }
+
     /**
-     * Builds the default chain of handlers
+     * Registers the default handlers
      */
     private void buildDefaultChain() {
-        // Create handlers
-        HTTPResponseHandler notFoundHandler = new NotFoundHandler();
-        HTTPResponseHandler badGatewayHandler = new BadGatewayHandler();
-        HTTPResponseHandler serviceUnavailableHandler = new ServiceUnavailableHandler();
-        HTTPResponseHandler successHandler = new SuccessHandler();
+        register(200, new SuccessHandler());
+        register(404, new NotFoundHandler());
+        register(502, new BadGatewayHandler());
+        register(503, new ServiceUnavailableHandler());
+    }
+
+    /**
+     * Sets the handler for one status code, replacing the previous one
+     */
+    public synchronized void register(int statusCode, HTTPResponseHandler handler) {
+        if (statusCode < 100 || statusCode >= MAX_STATUS) {
+            throw new IllegalArgumentException("Invalid status code: " + statusCode);
+        }
+        HTTPResponseHandler[] handlers = Arrays.copyOf(statusHandlers, statusHandlers.length);
+        handlers[statusCode] = handler;
+        statusHandlers = handlers;
+    }
+
+    /**
+     * Sets the handler for a status class (2 for 2xx ... 5 for 5xx),
+     * used for codes without their own handler
+     */
+    public synchronized void registerClass(int statusClass, HTTPResponseHandler handler) {
+        if (statusClass < 1 || statusClass >= MAX_STATUS / 100) {
+            throw new IllegalArgumentException("Invalid status class: " + statusClass);
+        }
+        HTTPResponseHandler[] handlers = Arrays.copyOf(classHandlers, classHandlers.length);
+        handlers[statusClass] = handler;
+        classHandlers = handlers;
+    }
 
-        // Link handlers in chain
-        successHandler.setNext(notFoundHandler);
-        notFoundHandler.setNext(badGatewayHandler);
-        badGatewayHandler.setNext(serviceUnavailableHandler);
+    public synchronized void addInterceptor(HTTPInterceptor interceptor) {
+        HTTPInterceptor[] updated = Arrays.copyOf(interceptors, interceptors.length + 1);
+        updated[interceptors.length] = interceptor;
+        interceptors = updated;
+    }
 
-        // Set first handler
-        firstHandler = successHandler;
+    public synchronized void removeInterceptor(HTTPInterceptor interceptor) {
+        interceptors = Arrays.stream(interceptors)
+                .filter(existing -> existing != interceptor)
+                .toArray(HTTPInterceptor[]::new);
     }
-    
+
     /**
-     * Processes an HTTP response through the handler chain
+     * Processes an HTTP response with the handler registered for its status code
      * 
      * @param response The HTTP response to process
-     * @return true if response was handled by any handler in the chain
+     * @return true if response was handled by a handler
      */
     public boolean process(HTTPResponse response) {
-        if (firstHandler == null) {
-            return false;
+        HTTPInterceptor[] currentInterceptors = interceptors;
+        for (HTTPInterceptor interceptor : currentInterceptors) {
+            interceptor.before(response);
+        }
+
+        HTTPResponseHandler handler = findHandler(response.getStatusCode());
+        boolean handled = handler != null && handler.handle(response);
+
+        for (HTTPInterceptor interceptor : currentInterceptors) {
+            interceptor.after(response, handled);
         }
-        return firstHandler.handle(response);
+        return handled;
+    }
+
+    private HTTPResponseHandler findHandler(Integer statusCode) {
+        if (statusCode == null || statusCode < 0 || statusCode >= MAX_STATUS) {
+            return null;
+        }
+        HTTPResponseHandler handler = statusHandlers[statusCode];
+        return handler != null ? handler : classHandlers[statusCode / 100];
+    }
+
+    private static class SharedHolder {
+        private static final HTTPHandlerChain INSTANCE = new HTTPHandlerChain();
     }
 }
@@ -0,0 +1,22 @@
+package org.example.webbrowser;
+
+/**
+ * Hook around HTTPHandlerChain.process, e.g. for logging or timing.
+ * Interceptors run for every response, before and after its handler.
+ */
+public interface HTTPInterceptor {
+
+    /**
+     * Called before the response is dispatched to its handler
+     */
+    default void before(HTTPResponse response) {
+    }
+
+    /**
+     * Called after the handler has run
+     *
+     * @param handled true if a handler processed the response
+     */
+    default void after(HTTPResponse response, boolean handled) {
+    }
+}
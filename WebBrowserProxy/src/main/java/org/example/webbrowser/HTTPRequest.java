@@ -1,18 +1,26 @@
 package org.example.webbrowser;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.io.File;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
 import java.net.URL;
+import java.net.http.HttpResponse;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HTTPRequest {
+    public static final String CACHE_ROOT = "./browser_cache";
+
     private String url;
     private String method;
+    private long bytesDownloaded;
+    private AtomicLong budgetUsed;
+    private long byteBudget;
+    private Map<String, CompletableFuture<String>> backgroundImages = Map.of();
 
     public HTTPRequest(String url, String method) {
         this.url = url;
@@ -35,25 +43,106 @@ public class HTTPRequest {
         this.method = method;
     }
 
+    /**
+     * @return Bytes received from the network by the last sendRequest
+     */
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    /**
+     * @return Images the last sendRequest's page was written without, see WebPageFetcher.getBackgroundImages
+     */
+    public Map<String, CompletableFuture<String>> getBackgroundImages() {
+        return backgroundImages;
+    }
+
+    /**
+     * Limits the bytes the page fetch may download, see WebPageFetcher.setByteBudget
+     */
+    public void setByteBudget(AtomicLong used, long budget) {
+        this.budgetUsed = used;
+        this.byteBudget = budget;
+    }
+
+    /**
+     * Cache directory of a page: the domain for the site root, the domain
+     * with a hash of the path for every other page
+     * Example: https://example.com/docs/ -> ./browser_cache/example_com~<path hash>
+     */
+    public static String getCacheDir(String url) {
+        String dir = extractDomain(url);
+        try {
+            String file = new URL(url).getFile();
+            if (!file.isEmpty() && !file.equals("/")) {
+                dir += "~" + ContentStore.hash(file).substring(0, 12);
+            }
+        } catch (Exception e) {
+            // Unparseable URLs share the default directory
+        }
+        return CACHE_ROOT + "/" + dir;
+    }
+
+    /**
+     * @return true if the page is in the memory cache or fresh in the disk cache
+     */
+    public static boolean isCached(String url) {
+        if (HotCache.pages().contains(url)) {
+            return true;
+        }
+        Path index = Paths.get(getCacheDir(url), "index.html");
+        if (!Files.exists(index)) {
+            return false;
+        }
+        CacheMetadata metadata = CacheMetadata.load(CacheMetadata.metadataPath(index));
+        return metadata == null || metadata.isFresh();
+    }
+
     /**
      * Sends request to server and gets HTTPResponse
      * Uses WebPageFetcher to download all resources and cache locally
      * Returns file:// URL to index.html so WebEngine can load resources properly
      */
     public HTTPResponse sendRequest() {
+        // Recently visited pages are served from memory
+        HTTPResponse hotResponse = HotCache.pages().get(url);
+        if (hotResponse != null && !touchCachedPage(hotResponse)) {
+            // The page directory was evicted from disk
+            HotCache.pages().invalidate(url);
+            hotResponse = null;
+        }
+        if (hotResponse != null) {
+            System.out.println("Page served from memory: " + url);
+            System.out.println("Memory cache: " + HotCache.pages().getStats());
+            HTTPResponse response = hotResponse.copy();
+            response.getHeaders().put("X-Cache", "memory");
+            return response;
+        }
+
         HTTPResponse response = new HTTPResponse();
 
         try {
-            // Generate cache directory based on domain
-            String domain = extractDomain(url);
-            String cacheDir = "./browser_cache/" + domain;
+            // Every page gets its own cache directory
+            String cacheDir = getCacheDir(url);
 
             // Use WebPageFetcher to download page and all resources
             WebPageFetcher fetcher = new WebPageFetcher(url, cacheDir);
-            String indexHtmlPath = fetcher.fetchAndSave();
+            if (budgetUsed != null) {
+                fetcher.setByteBudget(budgetUsed, byteBudget);
+            }
+            String indexHtmlPath;
+            try {
+                indexHtmlPath = fetcher.fetchAndSave();
+            } finally {
+                bytesDownloaded = fetcher.getBytesDownloaded();
+            }
+            backgroundImages = fetcher.getBackgroundImages();
 
-            // Read the saved HTML file
-            String htmlContent = new String(Files.readAllBytes(Paths.get(indexHtmlPath)));
+            // Use the HTML the fetcher just wrote, read the file only for cached pages
+            String htmlContent = fetcher.getHtml();
+            if (htmlContent == null) {
+                htmlContent = HtmlCharset.readFile(Paths.get(indexHtmlPath));
+            }
 
             // Create successful response with file:// URL
             response.setStatusCode(200);
@@ -71,7 +160,22 @@ public class HTTPRequest {
             System.out.println("Cache location: " + cacheDir);
             System.out.println("File URL: " + new File(indexHtmlPath).toURI().toString());
 
+            HotCache.pages().put(url, response.copy());
+            // The kept response points at images that were still downloading;
+            // once they are in, the page is read again from the updated file
+            fetcher.getBackgroundDownloads().thenRun(() -> HotCache.pages().invalidate(url));
+
         } catch (Exception e) {
+            // Navigation was cancelled, no fallback request
+            if (Thread.currentThread().isInterrupted()) {
+                System.out.println("Request cancelled: " + url);
+                return response;
+            }
+            // Nothing more may be downloaded
+            if (budgetUsed != null && budgetUsed.get() >= byteBudget) {
+                return response;
+            }
+
             // If WebPageFetcher fails, try simple HTTP request
             System.err.println("WebPageFetcher failed, falling back to simple HTTP request");
             e.printStackTrace();
@@ -81,6 +185,22 @@ public class HTTPRequest {
         return response;
     }
 
+    /**
+     * Marks the page directory of a memory-cached response as used in the
+     * disk cache, so it is not evicted while the page is served from memory
+     *
+     * @return false if the page's index.html is no longer on disk
+     */
+    private static boolean touchCachedPage(HTTPResponse response) {
+        String indexPath = response.getHeaders().get("X-Index-Path");
+        if (indexPath == null) {
+            return true;
+        }
+        Path pageDir = Paths.get(indexPath).getParent();
+        boolean indexed = CacheManager.forRoot(pageDir.getParent()).lookup(pageDir.getFileName().toString());
+        return indexed && Files.exists(Paths.get(indexPath));
+    }
+
     /**
      * Simple HTTP request (fallback method)
      */
@@ -88,44 +208,29 @@ public class HTTPRequest {
         HTTPResponse response = new HTTPResponse();
 
         try {
-            URL urlObj = new URL(url);
-            HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
-            connection.setRequestMethod(method);
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0");
+            HttpResponse<InputStream> httpResponse = RedirectResolver.forRoot(Paths.get(CACHE_ROOT))
+                    .send(url, method, Map.of("User-Agent", "Mozilla/5.0"));
 
-            int statusCode = connection.getResponseCode();
+            int statusCode = httpResponse.statusCode();
             response.setStatusCode(statusCode);
 
             // Read headers
             Map<String, String> headers = new HashMap<>();
-            connection.getHeaderFields().forEach((key, value) -> {
-                if (key != null) {
+            // The body is already decoded, so the transfer headers no longer apply
+            httpResponse.headers().map().forEach((key, value) -> {
+                if (!key.startsWith(":") && !key.equalsIgnoreCase("content-encoding")
+                        && !key.equalsIgnoreCase("content-length")) {
                     headers.put(key, String.join(", ", value));
                 }
             });
             response.setHeaders(headers);
 
-            // Read response body
-            StringBuilder body = new StringBuilder();
-            BufferedReader reader;
-
-            if (statusCode >= 200 && statusCode < 300) {
-                reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            } else {
-                reader = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
+            // Read response body in its own charset
+            try (InputStream body = httpResponse.body()) {
+                response.setBody(HtmlCharset.read(body,
+                        httpResponse.headers().firstValue("Content-Type").orElse(null)).getText());
             }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                body.append(line).append("\n");
-            }
-            reader.close();
-
-            response.setBody(body.toString());
-            connection.disconnect();
-
         } catch (Exception e) {
             response.setStatusCode(500);
             response.setBody("Error: " + e.getMessage());
@@ -138,7 +243,7 @@ public class HTTPRequest {
     /**
      * Extracts domain from URL for cache directory naming
      */
-    private String extractDomain(String url) {
+    private static String extractDomain(String url) {
         try {
             URL urlObj = new URL(url);
             String host = urlObj.getHost();
@@ -7,6 +7,7 @@ public class HTTPResponse {
     private Integer statusCode;
     private Map<String, String> headers;
     private String body;
+    private byte[] bodyBytes;
     
     public HTTPResponse() {
         this.statusCode = 0;
@@ -37,4 +38,27 @@ public class HTTPResponse {
     public void setBody(String body) {
         this.body = body;
     }
+
+    /**
+     * @return Raw body of a file response, or null if the response only has a text body
+     */
+    public byte[] getBodyBytes() {
+        return bodyBytes;
+    }
+
+    public void setBodyBytes(byte[] bodyBytes) {
+        this.bodyBytes = bodyBytes;
+    }
+
+    /**
+     * @return Copy with its own header map, so handlers can modify it freely
+     */
+    public HTTPResponse copy() {
+        HTTPResponse copy = new HTTPResponse();
+        copy.setStatusCode(statusCode);
+        copy.setHeaders(new HashMap<>(headers));
+        copy.setBody(body);
+        copy.setBodyBytes(bodyBytes);
+        return copy;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package org.example.webbrowser;
+
+/**
+ * In-memory caches in front of browser_cache.
+ *
+ * Recently visited pages are kept as ready HTTPResponses for a short time,
+ * so going back to a page does not touch the disk or the network.
+ * Resource bytes read from the cache are kept by file path.
+ */
+public final class HotCache {
+    public static final long PAGE_CACHE_SIZE = 32L * 1024 * 1024;
+    public static final long PAGE_TIME_TO_LIVE = 5 * 60 * 1000;
+    public static final long RESOURCE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    private static final MemoryCache<String, HTTPResponse> PAGES =
+            new MemoryCache<>(PAGE_CACHE_SIZE, PAGE_TIME_TO_LIVE, HotCache::weigh);
+    private static final MemoryCache<String, byte[]> RESOURCES =
+            new MemoryCache<>(RESOURCE_CACHE_SIZE, 0, bytes -> bytes.length);
+
+    private HotCache() {
+    }
+
+    /**
+     * @return Page responses keyed by URL
+     */
+    public static MemoryCache<String, HTTPResponse> pages() {
+        return PAGES;
+    }
+
+    /**
+     * @return Resource contents keyed by file path
+     */
+    public static MemoryCache<String, byte[]> resources() {
+        return RESOURCES;
+    }
+
+    private static long weigh(HTTPResponse response) {
+        // UTF-16 body plus a rough per-header overhead
+        long weight = response.getBody() == null ? 0 : 2L * response.getBody().length();
+        for (String key : response.getHeaders().keySet()) {
+            weight += 2L * (key.length() + response.getHeaders().get(key).length()) + 64;
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Charset detection and decoding for HTML documents.
+ *
+ * The charset is taken, in this order, from a byte order mark, the charset
+ * parameter of the Content-Type header, and a meta charset declaration in
+ * the first 1024 bytes; UTF-8 otherwise. Documents are read as raw bytes
+ * and decoded once.
+ */
+public final class HtmlCharset {
+    static final int PRESCAN_LENGTH = 1024;
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "<meta[^>]+charset\\s*=\\s*[\"']?\\s*([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CONTENT_TYPE_CHARSET = Pattern.compile(
+            "charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private HtmlCharset() {
+    }
+
+    /**
+     * Document bytes with the charset they are encoded in
+     */
+    public static class Document {
+        private final byte[] bytes;
+        private final Charset charset;
+        private final boolean declared;
+        private String text;
+
+        private Document(byte[] bytes, Charset charset, boolean declared) {
+            this.bytes = bytes;
+            this.charset = charset;
+            this.declared = declared;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public Charset getCharset() {
+            return charset;
+        }
+
+        /**
+         * @return true if the document itself names its charset (BOM or meta),
+         * so its bytes can be saved and loaded from a file as they are
+         */
+        public boolean isSelfDescribing() {
+            return declared;
+        }
+
+        /**
+         * @return Decoded text, decoded on the first call
+         */
+        public String getText() {
+            if (text == null) {
+                text = decode(bytes, charset);
+            }
+            return text;
+        }
+    }
+
+    /**
+     * Reads a whole stream into one buffer and detects its charset
+     *
+     * @param contentType Content-Type header value, or null
+     */
+    public static Document read(InputStream in, String contentType) throws IOException {
+        return of(in.readAllBytes(), contentType);
+    }
+
+    /**
+     * Reads an HTML file written by the fetcher
+     */
+    public static String readFile(Path file) throws IOException {
+        return of(Files.readAllBytes(file), null).getText();
+    }
+
+    public static Document of(byte[] bytes, String contentType) {
+        Charset bom = fromByteOrderMark(bytes);
+        if (bom != null) {
+            return new Document(bytes, bom, true);
+        }
+
+        Charset meta = fromMeta(bytes);
+        Charset header = fromContentType(contentType);
+        if (header != null) {
+            return new Document(bytes, header, header.equals(meta));
+        }
+        if (meta != null) {
+            return new Document(bytes, meta, true);
+        }
+        return new Document(bytes, StandardCharsets.UTF_8, false);
+    }
+
+    /**
+     * Encodes a document for saving as UTF-8. A meta tag declaring another
+     * charset is changed to utf-8, so the file is read back as it was written;
+     * encoding in the declared charset would turn the characters it lacks into '?'
+     */
+    public static byte[] encode(String html) {
+        int length = Math.min(html.length(), PRESCAN_LENGTH);
+        Matcher matcher = META_CHARSET.matcher(html).region(0, length);
+        if (matcher.find() && !StandardCharsets.UTF_8.equals(forName(matcher.group(1)))) {
+            html = html.substring(0, matcher.start(1)) + "utf-8" + html.substring(matcher.end(1));
+        }
+        return html.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Charset from the charset parameter of a Content-Type value, or null
+     */
+    public static Charset fromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CONTENT_TYPE_CHARSET.matcher(contentType);
+        return matcher.find() ? forName(matcher.group(1)) : null;
+    }
+
+    /**
+     * @return Charset declared by a meta tag near the start of the document, or null
+     */
+    public static Charset fromMeta(byte[] bytes) {
+        // Declarations are ASCII, so the prescan does not need the real charset
+        int length = Math.min(bytes.length, PRESCAN_LENGTH);
+        return fromMetaText(new String(bytes, 0, length, StandardCharsets.ISO_8859_1));
+    }
+
+    private static Charset fromMetaText(String head) {
+        Matcher matcher = META_CHARSET.matcher(head);
+        if (!matcher.find()) {
+            return null;
+        }
+        Charset charset = forName(matcher.group(1));
+        // A UTF-16 declaration in an ASCII-compatible prescan means UTF-8
+        if (charset != null && charset.name().startsWith("UTF-16")) {
+            return StandardCharsets.UTF_8;
+        }
+        return charset;
+    }
+
+    private static Charset fromByteOrderMark(byte[] bytes) {
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static String decode(byte[] bytes, Charset charset) {
+        // The decoder keeps the BOM as U+FEFF for UTF-8, drop it
+        String text = new String(bytes, charset);
+        return !text.isEmpty() && text.charAt(0) == '\uFEFF' ? text.substring(1) : text;
+    }
+
+    private static Charset forName(String name) {
+        String normalized = name.trim().toLowerCase(Locale.ROOT);
+        // Browsers treat Latin-1 labels as windows-1252
+        if (normalized.equals("iso-8859-1") || normalized.equals("latin1") || normalized.equals("us-ascii")) {
+            normalized = "windows-1252";
+        }
+        try {
+            return Charset.forName(normalized);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+}
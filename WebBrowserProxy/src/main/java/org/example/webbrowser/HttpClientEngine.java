@@ -0,0 +1,147 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared HTTP client used by HTTPRequest and WebPageFetcher.
+ *
+ * Wraps a single java.net.http.HttpClient, so connections (and TLS sessions)
+ * are kept alive and reused per host, and HTTP/2 streams are multiplexed
+ * over one connection where the server supports it.
+ *
+ * Compressed transfers are negotiated with Accept-Encoding and decoded
+ * by ContentDecoders while the body is read, so callers always get the
+ * decoded bytes.
+ *
+ * Connections can be opened ahead of the requests that need them with
+ * preconnect, so DNS, TCP and TLS setup for a host happens in parallel
+ * with other work.
+ */
+public class HttpClientEngine {
+    public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration PRECONNECT_TIMEOUT = Duration.ofSeconds(5);
+    // Origins connected to more recently than this are assumed to still have an idle connection
+    private static final long PRECONNECT_INTERVAL_MILLIS = 60_000;
+
+    private static final HttpClientEngine INSTANCE = new HttpClientEngine();
+
+    private final HttpClient client;
+    private final Map<String, Long> preconnected = new ConcurrentHashMap<>();
+
+    private HttpClientEngine() {
+        // Redirects are followed by the callers, so they can log and rewrite them
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
+    }
+
+    public static HttpClientEngine getInstance() {
+        return INSTANCE;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Sends a request and returns the response with a streaming, decoded body.
+     * The caller must close the body stream to release the connection.
+     *
+     * @param url     Absolute URL
+     * @param method  HTTP method
+     * @param headers Request headers
+     * @return Response with the body as an input stream
+     */
+    public HttpResponse<InputStream> send(String url, String method, Map<String, String> headers) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(URI.create(url))
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("User-Agent", USER_AGENT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+
+        if (!containsHeader(headers, "Accept-Encoding")) {
+            builder.header("Accept-Encoding", ContentDecoders.getAcceptEncoding());
+        }
+        headers.forEach(builder::setHeader);
+
+        // Responses without a body must not be run through a decoder
+        HttpResponse.BodyHandler<InputStream> bodyHandler = info -> {
+            boolean hasBody = !method.equals("HEAD") && info.statusCode() != 204 && info.statusCode() != 304;
+            String encoding = hasBody ? info.headers().firstValue("Content-Encoding").orElse(null) : null;
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                    body -> ContentDecoders.decode(encoding, body));
+        };
+
+        try {
+            return client.send(builder.build(), bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted: " + url);
+        }
+    }
+
+    /**
+     * Opens a connection to an origin, with a HEAD request whose connection
+     * the client keeps for the requests that follow. Origins connected to
+     * recently are skipped.
+     *
+     * @param origin scheme://host[:port]
+     * @return Future completed when the connection is ready; failed if it could not be opened
+     */
+    public CompletableFuture<Void> preconnect(String origin) {
+        long now = System.currentTimeMillis();
+        Long last = preconnected.get(origin);
+        if (last != null && now - last < PRECONNECT_INTERVAL_MILLIS) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(origin + "/"))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(PRECONNECT_TIMEOUT)
+                    .header("User-Agent", USER_AGENT)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(response -> preconnected.put(origin, System.currentTimeMillis()));
+    }
+
+    private static boolean containsHeader(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a GET request
+     */
+    public HttpResponse<InputStream> get(String url, Map<String, String> headers) throws IOException {
+        return send(url, "GET", headers);
+    }
+}
@@ -9,6 +9,9 @@ public interface IImage {
 
     String getFilePath();
 
+    /**
+     * @return URL the image can be displayed from (used as img src)
+     */
     String getContent();
 
     boolean isLoaded();
@@ -1,14 +1,13 @@
 package org.example.webbrowser;
 
-import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Base64;
 
 public class ImageFile implements IImage {
     private String fileName;
     private String filePath;
-    private String content; // Base64 encoded content
+    private String content; // URL the engine loads the image from
     private boolean loaded;
 
     public ImageFile(String fileName, String filePath) {
@@ -50,13 +49,28 @@ public class ImageFile implements IImage {
         return loaded;
     }
 
+    /**
+     * Checks that the image file exists and points content at it.
+     * The bytes are not read here: the engine loads the image itself,
+     * through cache:// for files in the browser cache.
+     */
     @Override
     public void loadImage() {
         try {
-            byte[] fileContent = Files.readAllBytes(Paths.get(filePath));
-            this.content = Base64.getEncoder().encodeToString(fileContent);
+            Path file = filePath.startsWith(CacheURLStreamHandler.PROTOCOL + ":")
+                    ? CacheURLStreamHandler.toPath(filePath)
+                    : Paths.get(filePath).toAbsolutePath().normalize();
+
+            if (!Files.isReadable(file)) {
+                this.loaded = false;
+                return;
+            }
+            this.content = CacheManager.isInCache(file)
+                    ? CacheURLStreamHandler.toURL(file)
+                    : file.toUri().toString();
             this.loaded = true;
-        } catch (IOException e) {
+        } catch (IllegalArgumentException e) {
+            // Invalid path or URL
             this.loaded = false;
         }
     }
@@ -1,17 +1,27 @@
 package org.example.webbrowser;
 
-import java.util.Base64;
-
 public class ImageProxy implements IImage {
     private ImageFile realImage; // RealSubject
     private String fileName;
     private String filePath;
     private String placeholderContent; // Заглушка
+    private int width;
+    private int height;
     private boolean isRealImageLoaded;
 
     public ImageProxy(String fileName, String filePath) {
+        this(fileName, filePath, 0, 0);
+    }
+
+    /**
+     * @param width  Width from the img tag, or 0 if unknown
+     * @param height Height from the img tag, or 0 if unknown
+     */
+    public ImageProxy(String fileName, String filePath, int width, int height) {
         this.fileName = fileName;
         this.filePath = filePath;
+        this.width = width;
+        this.height = height;
         this.isRealImageLoaded = false;
         this.placeholderContent = createPlaceholder();
     }
@@ -21,6 +31,14 @@ public class ImageProxy implements IImage {
         return fileName;
     }
 
+    /**
+     * Points the proxy at another file before the real image is loaded,
+     * e.g. the cached copy of an image that finished downloading after the page was shown
+     */
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
     @Override
     public String getFilePath() {
         return filePath;
@@ -39,6 +57,9 @@ public class ImageProxy implements IImage {
         return isRealImageLoaded;
     }
 
+    /**
+     * Loads the real image; called once the image is about to become visible
+     */
     @Override
     public void display() {
         loadImage();
@@ -51,32 +72,15 @@ public class ImageProxy implements IImage {
             realImage = new ImageFile(fileName, filePath);
             realImage.loadImage();
 
-            isRealImageLoaded = true;
+            // Stays false if the file could not be read, the placeholder is kept
+            isRealImageLoaded = realImage.isLoaded();
         }
     }
 
+    /**
+     * @return Shared placeholder for the size of this image
+     */
     public String createPlaceholder() {
-        String svg = String.format("""
-            <svg width='300' height='200' xmlns='http://www.w3.org/2000/svg'>
-                <defs>
-                    <linearGradient id='grad' x1='0%%' y1='0%%' x2='100%%' y2='100%%'>
-                        <stop offset='0%%' style='stop-color:#e0e0e0;stop-opacity:1' />
-                        <stop offset='100%%' style='stop-color:#f5f5f5;stop-opacity:1' />
-                    </linearGradient>
-                </defs>
-                <rect width='300' height='200' fill='url(#grad)' stroke='#cccccc' stroke-width='2'/>
-                <circle cx='150' cy='80' r='25' fill='#999999' opacity='0.5'/>
-                <circle cx='150' cy='80' r='15' fill='#cccccc'/>
-                <polygon points='140,75 145,85 155,85 160,75' fill='#999999' opacity='0.5'/>
-                <text x='150' y='140' text-anchor='middle' font-family='Arial' font-size='14' fill='#666666'>
-                    Loading...
-                </text>
-                <text x='150' y='160' text-anchor='middle' font-family='Arial' font-size='12' fill='#999999'>
-                    %s
-                </text>
-            </svg>
-            """, fileName);
-
-        return "data:image/svg+xml;base64," + Base64.getEncoder().encodeToString(svg.getBytes());
+        return PlaceholderFactory.getPlaceholder(width, height);
     }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package org.example.webbrowser;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Speculative prefetching of the pages a user is likely to open next.
+ *
+ * The injected link handler reports touched links, links under the pointer
+ * and links scrolled into view. A hinted page is fetched through HTTPRequest,
+ * which fills the disk cache and the in-memory page cache, so a later click
+ * loads from a warm cache.
+ *
+ * Prefetches run on a few low-priority threads, touch and hover hints before
+ * viewport hints, and stop once the bandwidth budget of the current page is
+ * spent. A navigation takes over a running prefetch of the same page and
+ * cancels the others; hints are ignored until the next page has loaded.
+ */
+public class LinkPrefetcher {
+    public static final int DEFAULT_MAX_CONCURRENT_PREFETCHES = 2;
+    public static final long DEFAULT_BANDWIDTH_BUDGET = 8L * 1024 * 1024;
+    private static final int MAX_PENDING_PREFETCHES = 16;
+
+    /**
+     * Reason a link was reported, in order of priority
+     */
+    public enum Hint {
+        TOUCH, HOVER, VIEWPORT;
+
+        /**
+         * @return Hint for a name reported by the page, VIEWPORT if unknown
+         */
+        public static Hint fromName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return VIEWPORT;
+            }
+        }
+    }
+
+    private final long bandwidthBudget;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Prefetch> prefetches = new ConcurrentHashMap<>();
+    private final Set<String> attempted = ConcurrentHashMap.newKeySet();
+    private final AtomicLong bytesUsed = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger prefetchedCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private volatile boolean paused;
+
+    public LinkPrefetcher() {
+        this(DEFAULT_MAX_CONCURRENT_PREFETCHES, DEFAULT_BANDWIDTH_BUDGET);
+    }
+
+    /**
+     * @param maxConcurrentPrefetches Pages fetched at the same time
+     * @param bandwidthBudget         Bytes that may be downloaded for the hints of one page
+     */
+    public LinkPrefetcher(int maxConcurrentPrefetches, long bandwidthBudget) {
+        this.bandwidthBudget = bandwidthBudget;
+        this.executor = new ThreadPoolExecutor(maxConcurrentPrefetches, maxConcurrentPrefetches,
+                30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "link-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a prefetch of a page, unless it is already queued, was tried
+     * for the current page, or the budget is spent
+     *
+     * @param url Absolute http(s) URL
+     */
+    public void hint(String url, Hint hint) {
+        if (paused || url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            url = url.substring(0, fragment);
+        }
+
+        if (bytesUsed.get() >= bandwidthBudget || prefetches.size() >= MAX_PENDING_PREFETCHES
+                || attempted.contains(url)) {
+            return;
+        }
+
+        Prefetch prefetch = new Prefetch(url, hint, sequence.incrementAndGet());
+        if (prefetches.putIfAbsent(url, prefetch) == null) {
+            attempted.add(url);
+            executor.execute(prefetch);
+        }
+    }
+
+    /**
+     * Called when a navigation starts. Cancels all prefetches except a
+     * running one for the same page and ignores hints until resume()
+     *
+     * @return Running prefetch of the page, to be awaited before fetching it again, or null
+     */
+    public Future<?> takeOver(String url) {
+        paused = true;
+        Prefetch current = prefetches.get(url);
+        if (current != null && !current.started) {
+            current = null;
+        }
+
+        for (Prefetch prefetch : prefetches.values()) {
+            if (prefetch != current) {
+                prefetch.cancel(true);
+            }
+        }
+        executor.purge();
+        return current;
+    }
+
+    /**
+     * Called when a page has loaded; starts a new budget for its links
+     */
+    public void resume() {
+        attempted.clear();
+        bytesUsed.set(0);
+        paused = false;
+    }
+
+    public long getBandwidthBudget() {
+        return bandwidthBudget;
+    }
+
+    public long getBytesUsed() {
+        return bytesUsed.get();
+    }
+
+    /**
+     * @return Short statistics line for logging
+     */
+    public String getStats() {
+        return String.format("prefetched=%d, skipped=%d, pending=%d, bytes=%d/%d",
+                prefetchedCount.get(), skippedCount.get(), prefetches.size(), bytesUsed.get(), bandwidthBudget);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void prefetch(String url) {
+        if (bytesUsed.get() >= bandwidthBudget || HTTPRequest.isCached(url)) {
+            skippedCount.incrementAndGet();
+            return;
+        }
+
+        // Bytes are counted as resources arrive, so the page stops once the budget is spent
+        HTTPRequest request = new HTTPRequest(url, "GET");
+        request.setByteBudget(bytesUsed, bandwidthBudget);
+        HTTPResponse response = request.sendRequest();
+        if (Thread.currentThread().isInterrupted() || response.getStatusCode() != 200) {
+            return;
+        }
+
+        prefetchedCount.incrementAndGet();
+    }
+
+    /**
+     * Queued prefetch, ordered by hint and then by arrival
+     */
+    private class Prefetch extends FutureTask<Void> implements Comparable<Prefetch> {
+        private final String url;
+        private final Hint hint;
+        private final long sequence;
+        private volatile boolean started;
+
+        private Prefetch(String url, Hint hint, long sequence) {
+            super(() -> {
+                prefetch(url);
+                return null;
+            });
+            this.url = url;
+            this.hint = hint;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            prefetches.remove(url, this);
+        }
+
+        @Override
+        public int compareTo(Prefetch other) {
+            int byHint = hint.compareTo(other.hint);
+            return byHint != 0 ? byHint : Long.compare(sequence, other.sequence);
+        }
+    }
+}
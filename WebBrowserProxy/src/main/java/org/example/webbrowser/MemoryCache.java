@@ -0,0 +1,169 @@
+package org.example.webbrowser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Memory-bounded in-process LRU cache.
+ *
+ * Every value has a weight (approximate size in bytes); when the total
+ * weight goes over the limit, least recently used entries are evicted.
+ * Entries can also expire a fixed time after they were stored.
+ * Hit, miss and eviction counts are kept for diagnostics.
+ */
+public class MemoryCache<K, V> {
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final long maxWeight;
+    private final long timeToLiveMillis;
+    private final ToLongFunction<V> weigher;
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxWeight        Weight limit (bytes)
+     * @param timeToLiveMillis Lifetime of an entry, or 0 for no expiry
+     * @param weigher          Computes the weight of a value
+     */
+    public MemoryCache(long maxWeight, long timeToLiveMillis, ToLongFunction<V> weigher) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxWeight = maxWeight;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return Cached value, or null on a miss
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * @return true if a live entry exists; does not count as a hit or a miss
+     */
+    public synchronized boolean contains(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null && !isExpired(entry);
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        remove(key);
+
+        // Values larger than the whole cache are not kept
+        if (valueWeight > maxWeight) {
+            return;
+        }
+
+        entries.put(key, new Entry<>(value, valueWeight, System.currentTimeMillis()));
+        weight += valueWeight;
+
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Entry<V> eldest = iterator.next().getValue();
+            iterator.remove();
+            weight -= eldest.weight;
+            evictionCount++;
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    /**
+     * Removes every entry whose value matches
+     */
+    public synchronized void invalidateIf(Predicate<V> predicate) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (predicate.test(entry.value)) {
+                iterator.remove();
+                weight -= entry.weight;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return Short statistics line for logging
+     */
+    public synchronized String getStats() {
+        return String.format("entries=%d, weight=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.2f",
+                entries.size(), weight, maxWeight, hitCount, missCount, evictionCount, getHitRate());
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return timeToLiveMillis > 0 && System.currentTimeMillis() - entry.storedAt > timeToLiveMillis;
+    }
+
+    private void remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long storedAt;
+
+        private Entry(V value, long weight, long storedAt) {
+            this.value = value;
+            this.weight = weight;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.webbrowser;
+
+import javafx.concurrent.Task;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Background navigation to a real website.
+ *
+ * Fetching the page with all its resources, handling the response and
+ * parsing the page run off the JavaFX application thread; the controller
+ * only loads the result into the WebEngine. Cancelling the task interrupts
+ * the fetch, which stops in-flight resource downloads.
+ *
+ * Images of a fetched page are replaced with ImageProxy placeholders in a
+ * separate view file next to index.html, so the engine initially loads no images.
+ */
+public class NavigationTask extends Task<HTTPResponse> {
+    private final String url;
+    private final HTTPHandlerChain handlerChain;
+    public static final String VIEW_FILE = "view.html";
+
+    private final Map<String, ImageProxy> imageProxies;
+    private volatile WebPage webPage;
+    private volatile String viewUrl;
+    private volatile Future<?> prefetch;
+    private volatile Map<String, CompletableFuture<String>> backgroundImages = Map.of();
+
+    public NavigationTask(String url, HTTPHandlerChain handlerChain) {
+        this.url = url;
+        this.handlerChain = handlerChain;
+        this.imageProxies = new ConcurrentHashMap<>();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Sets a running prefetch of the same page; the task waits for it
+     * instead of fetching the page concurrently into the same directory
+     */
+    public void setPrefetch(Future<?> prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @return Page parsed from the response, available once the task succeeded
+     */
+    public WebPage getWebPage() {
+        return webPage;
+    }
+
+    /**
+     * @return file:// URL of the page with lazy images, or null if there is none
+     */
+    public String getViewUrl() {
+        return viewUrl;
+    }
+
+    /**
+     * @return Image placeholders of the view by id
+     */
+    public Map<String, ImageProxy> getImageProxies() {
+        return imageProxies;
+    }
+
+    /**
+     * @return Downloads of images the page was written without, by URL
+     */
+    public Map<String, CompletableFuture<String>> getBackgroundImages() {
+        return backgroundImages;
+    }
+
+    @Override
+    protected HTTPResponse call() throws Exception {
+        if (prefetch != null) {
+            try {
+                prefetch.get();
+            } catch (ExecutionException | CancellationException e) {
+                // The page is fetched below
+            }
+        }
+
+        // Create HTTP request
+        HTTPRequest request = new HTTPRequest(url, "GET");
+
+        // Send request - WebPageFetcher will download everything
+        HTTPResponse response = request.sendRequest();
+        backgroundImages = request.getBackgroundImages();
+        if (isCancelled()) {
+            return response;
+        }
+
+        // Process response through Chain of Responsibility
+        handlerChain.process(response);
+
+        // Parse page for our architecture
+        WebPage page = new WebPage();
+        page.setBaseUrl(url);
+        page.setRawHTML(response.getBody());
+        page.parseHTML();
+        webPage = page;
+
+        String cacheDir = response.getHeaders().get("X-Cache-Dir");
+        if (response.getStatusCode() == 200 && cacheDir != null) {
+            Path pageDir = Paths.get(cacheDir).toAbsolutePath().normalize();
+            String view = WebBrowserController.replaceImagesWithProxies(response.getBody(), imageProxies, pageDir);
+            Path viewFile = pageDir.resolve(VIEW_FILE);
+            Files.write(viewFile, HtmlCharset.encode(view));
+            viewUrl = viewFile.toUri().toString();
+        }
+
+        return response;
+    }
+}
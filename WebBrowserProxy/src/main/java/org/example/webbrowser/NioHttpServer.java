@@ -0,0 +1,466 @@
+package org.example.webbrowser;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * Non-blocking HTTP/1.1 server on the loopback interface.
+ *
+ * A single selector thread accepts connections, parses requests and writes
+ * responses produced by the WebServer. Connections are kept alive by default
+ * (HTTP/1.1) and pipelined requests are answered in order. Idle connections
+ * are closed after a timeout. Large files are transferred from their channel
+ * to the socket as it accepts data, without copying them into the heap.
+ */
+public class NioHttpServer {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final long IDLE_TIMEOUT = 30_000;
+
+    private final WebServer webServer;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    public NioHttpServer(WebServer webServer) {
+        this.webServer = webServer;
+    }
+
+    /**
+     * Binds to 127.0.0.1 and starts the selector thread
+     *
+     * @param port Port to listen on, 0 for any free port
+     */
+    public synchronized void start(int port) throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this::run, "web-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Port the server is bound to, or -1 if it is not running
+     */
+    public int getPort() {
+        if (serverChannel == null || !serverChannel.isOpen()) {
+            return -1;
+        }
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+
+                closeIdleConnections();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("Web server stopped: " + e.getMessage());
+        } finally {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+
+        int count = channel.read(connection.input);
+        if (count < 0) {
+            // Peer closed; finish pending responses first
+            connection.closeAfterWrite = true;
+            connection.input.clear();
+            updateInterest(key, connection);
+            return;
+        }
+        connection.lastActivity = System.currentTimeMillis();
+
+        // Answer every complete request in the buffer (pipelining)
+        connection.input.flip();
+        while (!connection.closeAfterWrite && parseRequest(connection)) {
+            // continue with the next pipelined request
+        }
+        connection.input.compact();
+
+        if (!connection.input.hasRemaining()) {
+            if (connection.input.capacity() >= MAX_HEADER_SIZE) {
+                queueError(connection, 431, "Request Header Fields Too Large");
+            } else {
+                // Grow for a large request head
+                ByteBuffer larger = ByteBuffer.allocate(connection.input.capacity() * 2);
+                connection.input.flip();
+                larger.put(connection.input);
+                connection.input = larger;
+            }
+        }
+
+        updateInterest(key, connection);
+        if (!connection.output.isEmpty()) {
+            write(key);
+        }
+    }
+
+    /**
+     * Parses one request from the input buffer (in read mode) and queues its response
+     *
+     * @return true if a complete request was consumed
+     */
+    private boolean parseRequest(Connection connection) {
+        ByteBuffer input = connection.input;
+        int start = input.position();
+        int headEnd = indexOfHeadEnd(input);
+        if (headEnd < 0) {
+            return false;
+        }
+
+        String head = new String(input.array(), start, headEnd - start, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            input.position(headEnd + 4);
+            queueError(connection, 400, "Bad Request");
+            return false;
+        }
+
+        String method = requestLine[0];
+        String target = requestLine[1];
+        boolean http11 = requestLine[2].equals("HTTP/1.1");
+        boolean keepAlive = http11;
+        long contentLength = 0;
+
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = lines[i].substring(colon + 1).trim();
+            if (name.equals("connection")) {
+                String token = value.toLowerCase(Locale.ROOT);
+                keepAlive = token.contains("close") ? false : token.contains("keep-alive") || http11;
+            } else if (name.equals("content-length")) {
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+            } else if (name.equals("transfer-encoding")) {
+                contentLength = -1;
+            }
+        }
+
+        if (contentLength < 0) {
+            input.position(headEnd + 4);
+            queueError(connection, 501, "Not Implemented");
+            return false;
+        }
+
+        // Request bodies are not used, but must be skipped before the next request
+        int bodyStart = headEnd + 4;
+        if (input.limit() - bodyStart < contentLength) {
+            if (bodyStart + contentLength > MAX_HEADER_SIZE) {
+                input.position(bodyStart);
+                queueError(connection, 413, "Payload Too Large");
+            }
+            return false;
+        }
+        input.position(bodyStart + (int) contentLength);
+
+        WebServer.Response response = webServer.respond(method, target);
+        queueResponse(connection, response, method.equals("HEAD"), keepAlive);
+        if (!keepAlive) {
+            connection.closeAfterWrite = true;
+        }
+        return true;
+    }
+
+    private static int indexOfHeadEnd(ByteBuffer input) {
+        byte[] bytes = input.array();
+        for (int i = input.position(); i + 3 < input.limit(); i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void queueResponse(Connection connection, WebServer.Response response, boolean headOnly, boolean keepAlive) {
+        // The file is opened before the head is queued, so a failure can still be answered
+        Chunk body = null;
+        if (!headOnly && response.getFile() != null) {
+            try {
+                body = new FileChunk(FileChannel.open(response.getFile(), StandardOpenOption.READ),
+                        response.getContentLength());
+            } catch (IOException e) {
+                queueError(connection, 500, "Internal Server Error");
+                return;
+            }
+        } else if (!headOnly && response.getBody().hasRemaining()) {
+            body = new BufferChunk(response.getBody());
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(response.getStatusCode()).append(' ')
+                .append(reasonPhrase(response.getStatusCode())).append("\r\n");
+        head.append("Server: ").append(webServer.getHost()).append("\r\n");
+        head.append("Content-Type: ").append(response.getContentType()).append("\r\n");
+        head.append("Content-Length: ").append(response.getContentLength()).append("\r\n");
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        head.append("\r\n");
+
+        connection.output.add(new BufferChunk(ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1))));
+        if (body != null) {
+            connection.output.add(body);
+        }
+    }
+
+    private void queueError(Connection connection, int statusCode, String message) {
+        WebServer.Response response = new WebServer.Response(statusCode, "text/plain",
+                ByteBuffer.wrap(message.getBytes(StandardCharsets.ISO_8859_1)));
+        queueResponse(connection, response, false, false);
+        connection.closeAfterWrite = true;
+        connection.input.clear();
+        connection.input.flip();
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+
+        while (!connection.output.isEmpty()) {
+            Chunk chunk = connection.output.peek();
+            if (!chunk.writeTo(channel)) {
+                // Socket buffer is full, wait for OP_WRITE
+                break;
+            }
+            connection.output.poll().close();
+        }
+        connection.lastActivity = System.currentTimeMillis();
+
+        if (connection.output.isEmpty() && connection.closeAfterWrite) {
+            close(key);
+            return;
+        }
+        updateInterest(key, connection);
+    }
+
+    private void updateInterest(SelectionKey key, Connection connection) {
+        if (!key.isValid()) {
+            return;
+        }
+        int ops = connection.output.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+        if (!connection.closeAfterWrite) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (ops == 0) {
+            close(key);
+            return;
+        }
+        key.interestOps(ops);
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection
+                    && now - connection.lastActivity > IDLE_TIMEOUT) {
+                close(key);
+            }
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        // Files of unsent responses must not stay open
+        if (key.attachment() instanceof Connection connection) {
+            for (Chunk chunk : connection.output) {
+                chunk.close();
+            }
+            connection.output.clear();
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            System.err.println("Failed to close connection: " + e.getMessage());
+        }
+    }
+
+    private static String reasonPhrase(int statusCode) {
+        switch (statusCode) {
+            case 200: return "OK";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            default: return "Unknown";
+        }
+    }
+
+    /**
+     * Per-connection state
+     */
+    private static class Connection {
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<Chunk> output = new ArrayDeque<>();
+        private boolean closeAfterWrite;
+        private long lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Part of a queued response
+     */
+    private interface Chunk {
+        /**
+         * @return true once the whole chunk is written
+         */
+        boolean writeTo(SocketChannel channel) throws IOException;
+
+        void close();
+    }
+
+    private static class BufferChunk implements Chunk {
+        private final ByteBuffer buffer;
+
+        private BufferChunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            channel.write(buffer);
+            return !buffer.hasRemaining();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FileChunk implements Chunk {
+        private final FileChannel file;
+        private final long length;
+        private long position;
+
+        private FileChunk(FileChannel file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            while (position < length) {
+                long written = file.transferTo(position, length - position, channel);
+                if (written == 0) {
+                    // Either the socket is full or the file became shorter than announced
+                    if (position >= file.size()) {
+                        throw new IOException("File truncated while sending");
+                    }
+                    return false;
+                }
+                position += written;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.webbrowser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flyweight factory for image placeholders.
+ *
+ * A placeholder depends only on its size, so every ImageProxy of the same
+ * size shares one data URI instead of formatting and encoding its own SVG.
+ */
+public final class PlaceholderFactory {
+    public static final int DEFAULT_WIDTH = 300;
+    public static final int DEFAULT_HEIGHT = 200;
+
+    private static final int MAX_CACHED_SIZES = 256;
+    private static final int MAX_DIMENSION = 4096;
+
+    private static final Map<String, String> PLACEHOLDERS = new ConcurrentHashMap<>();
+
+    private PlaceholderFactory() {
+    }
+
+    /**
+     * @return Placeholder data URI of the given size (non-positive values mean the default size)
+     */
+    public static String getPlaceholder(int width, int height) {
+        int w = width > 0 ? Math.min(width, MAX_DIMENSION) : DEFAULT_WIDTH;
+        int h = height > 0 ? Math.min(height, MAX_DIMENSION) : DEFAULT_HEIGHT;
+        String key = w + "x" + h;
+
+        String placeholder = PLACEHOLDERS.get(key);
+        if (placeholder == null) {
+            placeholder = createPlaceholder(w, h);
+            // Unusual sizes are not kept once the cache is full
+            if (PLACEHOLDERS.size() < MAX_CACHED_SIZES) {
+                PLACEHOLDERS.putIfAbsent(key, placeholder);
+            }
+        }
+        return placeholder;
+    }
+
+    /**
+     * @return Number of distinct placeholders currently shared
+     */
+    public static int getCachedCount() {
+        return PLACEHOLDERS.size();
+    }
+
+    private static String createPlaceholder(int width, int height) {
+        // The drawing is made for 300x200 and scaled to the requested size
+        String svg = String.format("""
+            <svg width='%d' height='%d' viewBox='0 0 300 200' preserveAspectRatio='xMidYMid meet' xmlns='http://www.w3.org/2000/svg'>
+                <defs>
+                    <linearGradient id='grad' x1='0%%' y1='0%%' x2='100%%' y2='100%%'>
+                        <stop offset='0%%' style='stop-color:#e0e0e0;stop-opacity:1' />
+                        <stop offset='100%%' style='stop-color:#f5f5f5;stop-opacity:1' />
+                    </linearGradient>
+                </defs>
+                <rect width='300' height='200' fill='url(#grad)' stroke='#cccccc' stroke-width='2'/>
+                <circle cx='150' cy='80' r='25' fill='#999999' opacity='0.5'/>
+                <circle cx='150' cy='80' r='15' fill='#cccccc'/>
+                <polygon points='140,75 145,85 155,85 160,75' fill='#999999' opacity='0.5'/>
+                <text x='150' y='140' text-anchor='middle' font-family='Arial' font-size='14' fill='#666666'>
+                    Loading...
+                </text>
+            </svg>
+            """, width, height);
+
+        return "data:image/svg+xml;base64," + Base64.getEncoder().encodeToString(svg.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,243 @@
+package org.example.webbrowser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Follows HTTP redirects for the shared HTTP client.
+ *
+ * Redirects are followed in a loop with a hop limit; a URL that is visited
+ * twice ends the chain as a redirect loop. Relative Location headers are
+ * resolved against the URL that answered with them.
+ *
+ * Permanent redirects (301, 308) are remembered in a persistent index
+ * (browser_cache/redirects.index), so later requests go straight to the
+ * canonical URL.
+ */
+public class RedirectResolver {
+    public static final int DEFAULT_MAX_REDIRECTS = 10;
+
+    private static final String INDEX_FILE = "redirects.index";
+    private static final int MAX_ENTRIES = 1024;
+    private static final Map<Path, RedirectResolver> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Path indexPath;
+    // Insertion-ordered: the oldest redirects are dropped first
+    private final LinkedHashMap<String, String> permanent;
+    private int maxRedirects = DEFAULT_MAX_REDIRECTS;
+
+    private RedirectResolver(Path root) {
+        this.indexPath = root.resolve(INDEX_FILE);
+        this.permanent = new LinkedHashMap<>();
+        loadIndex();
+    }
+
+    /**
+     * @return Shared resolver for a cache root directory
+     */
+    public static RedirectResolver forRoot(Path root) {
+        return INSTANCES.computeIfAbsent(root.toAbsolutePath().normalize(), RedirectResolver::new);
+    }
+
+    public synchronized int getMaxRedirects() {
+        return maxRedirects;
+    }
+
+    public synchronized void setMaxRedirects(int maxRedirects) {
+        this.maxRedirects = maxRedirects;
+    }
+
+    /**
+     * Sends a GET request, following redirects
+     */
+    public HttpResponse<InputStream> get(String url, Map<String, String> headers) throws IOException {
+        return send(url, "GET", headers);
+    }
+
+    /**
+     * Sends a request and follows redirects. The response's uri() is the
+     * URL that finally answered. The caller must close the body stream.
+     *
+     * @throws IOException on too many redirects, a redirect loop or a Location that cannot be followed
+     */
+    public HttpResponse<InputStream> send(String url, String method, Map<String, String> headers) throws IOException {
+        String current = lookup(url);
+        if (!current.equals(url)) {
+            System.out.println("Known permanent redirect: " + url + " -> " + current);
+        }
+
+        Set<String> visited = new HashSet<>();
+        List<String> chain = new ArrayList<>();
+        int limit = getMaxRedirects();
+
+        while (true) {
+            visited.add(current);
+            chain.add(current);
+
+            HttpResponse<InputStream> response = HttpClientEngine.getInstance().send(current, method, headers);
+            int statusCode = response.statusCode();
+            Optional<String> location = response.headers().firstValue("Location");
+            if (!isRedirect(statusCode) || location.isEmpty()) {
+                return response;
+            }
+            response.body().close();
+
+            String target = resolveLocation(current, location.get());
+            if (isPermanent(statusCode)) {
+                remember(current, target);
+            }
+            if (visited.contains(target)) {
+                forget(chain);
+                throw new IOException("Redirect loop: " + String.join(" -> ", chain) + " -> " + target);
+            }
+            if (chain.size() > limit) {
+                throw new IOException("Too many redirects (" + limit + "): " + url);
+            }
+
+            System.out.println("Following redirect (" + statusCode + ") to: " + target);
+            // 303, and 301/302 after anything but GET/HEAD, continue with GET like browsers do
+            if (statusCode == 303 || ((statusCode == 301 || statusCode == 302)
+                    && !method.equals("GET") && !method.equals("HEAD"))) {
+                method = "GET";
+            }
+            current = target;
+        }
+    }
+
+    /**
+     * @return Canonical URL from the remembered permanent redirects, or the URL itself
+     */
+    public synchronized String lookup(String url) {
+        String current = url;
+        Set<String> visited = new HashSet<>();
+        while (visited.add(current)) {
+            String next = permanent.get(current);
+            if (next == null) {
+                break;
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    public synchronized int size() {
+        return permanent.size();
+    }
+
+    public static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303
+                || statusCode == 307 || statusCode == 308;
+    }
+
+    private static boolean isPermanent(int statusCode) {
+        return statusCode == 301 || statusCode == 308;
+    }
+
+    /**
+     * Resolves a Location header against the URL that sent it, dropping the fragment
+     */
+    static String resolveLocation(String from, String location) throws IOException {
+        try {
+            URI base = new URI(from);
+            // URI.resolve drops the slash between host and relative path when the base has no path
+            if (base.getRawPath() == null || base.getRawPath().isEmpty()) {
+                base = new URI(base.getScheme(), base.getRawAuthority(), "/", null, null);
+            }
+            URI target = base.resolve(new URI(location.trim().replace(" ", "%20")));
+            String scheme = target.getScheme() == null ? "" : target.getScheme().toLowerCase();
+            if (!scheme.equals("http") && !scheme.equals("https")) {
+                throw new IOException("Unsupported redirect target: " + location);
+            }
+            String resolved = target.toString();
+            int hash = resolved.indexOf('#');
+            return hash >= 0 ? resolved.substring(0, hash) : resolved;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid redirect target: " + location, e);
+        }
+    }
+
+    private void remember(String from, String to) {
+        synchronized (this) {
+            if (to.equals(permanent.get(from))) {
+                return;
+            }
+            permanent.remove(from);
+            permanent.put(from, to);
+            if (permanent.size() > MAX_ENTRIES) {
+                String oldest = permanent.keySet().iterator().next();
+                permanent.remove(oldest);
+            }
+        }
+        saveIndex();
+    }
+
+    /**
+     * Drops remembered redirects of a chain that turned out to loop
+     */
+    private void forget(List<String> chain) {
+        boolean changed = false;
+        synchronized (this) {
+            for (String url : chain) {
+                changed |= permanent.remove(url) != null;
+            }
+        }
+        if (changed) {
+            saveIndex();
+        }
+    }
+
+    private synchronized void loadIndex() {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(indexPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length == 2 && !parts[0].isEmpty() && !parts[1].isEmpty()) {
+                    permanent.put(parts[0], parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read redirect index: " + e.getMessage());
+            permanent.clear();
+        }
+    }
+
+    private void saveIndex() {
+        StringBuilder content = new StringBuilder();
+        synchronized (this) {
+            for (Map.Entry<String, String> redirect : permanent.entrySet()) {
+                content.append(redirect.getKey()).append('\t').append(redirect.getValue()).append('\n');
+            }
+        }
+
+        try {
+            Files.createDirectories(indexPath.getParent());
+            Path tmp = Files.createTempFile(indexPath.getParent(), INDEX_FILE, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                writer.write(content.toString());
+            }
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to save redirect index: " + e.getMessage());
+        }
+    }
+}
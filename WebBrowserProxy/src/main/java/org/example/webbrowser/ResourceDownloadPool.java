@@ -0,0 +1,189 @@
+package org.example.webbrowser;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded worker pool for resource downloads.
+ *
+ * The number of worker threads is the global concurrency limit.
+ * Each host additionally has its own limit: tasks over that limit wait
+ * in a per-host queue (without holding a worker) until a download
+ * for the same host completes.
+ *
+ * Both queues are ordered by ResourcePriority (then by submission order),
+ * so when workers are busy the most important waiting download starts next.
+ *
+ * cancel() stops the whole batch: running downloads are interrupted and
+ * queued ones are dropped.
+ */
+public class ResourceDownloadPool {
+    private final ThreadPoolExecutor executor;
+    private final int maxPerHost;
+    private final Map<String, HostQueue> hosts;
+    private final Set<CompletableFuture<?>> inFlight;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean cancelled;
+
+    public ResourceDownloadPool(int maxConcurrent, int maxPerHost) {
+        if (maxConcurrent < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be positive");
+        }
+        this.maxPerHost = maxPerHost;
+        this.hosts = new ConcurrentHashMap<>();
+        this.inFlight = ConcurrentHashMap.newKeySet();
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "resource-download-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules a download task for the given host with LOW priority
+     *
+     * @param host Host the task talks to (used for the per-host limit)
+     * @param task Download task
+     * @return Future completed with the task result
+     */
+    public <T> CompletableFuture<T> submit(String host, Callable<T> task) {
+        return submit(host, ResourcePriority.LOW, task);
+    }
+
+    /**
+     * Schedules a download task for the given host
+     *
+     * @param host     Host the task talks to (used for the per-host limit)
+     * @param priority Waiting tasks with a higher priority start first
+     * @param task     Download task
+     * @return Future completed with the task result
+     */
+    public <T> CompletableFuture<T> submit(String host, ResourcePriority priority, Callable<T> task) {
+        String key = host == null ? "" : host;
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (cancelled) {
+            future.cancel(false);
+            return future;
+        }
+        inFlight.add(future);
+        future.whenComplete((result, error) -> inFlight.remove(future));
+
+        Job job = new Job(priority, sequence.incrementAndGet(), () -> {
+            try {
+                if (cancelled) {
+                    future.cancel(false);
+                } else {
+                    future.complete(task.call());
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                release(key);
+            }
+        });
+
+        HostQueue queue = hosts.computeIfAbsent(key, h -> new HostQueue());
+        boolean runNow;
+        synchronized (queue) {
+            runNow = queue.active < maxPerHost;
+            if (runNow) {
+                queue.active++;
+            } else {
+                queue.pending.add(job);
+            }
+        }
+
+        if (runNow) {
+            executor.execute(job);
+        }
+        return future;
+    }
+
+    /**
+     * Starts the next queued task for the host, or frees its slot
+     */
+    private void release(String host) {
+        HostQueue queue = hosts.get(host);
+        Job next;
+        synchronized (queue) {
+            next = queue.pending.poll();
+            if (next == null) {
+                queue.active--;
+            }
+        }
+
+        if (next != null && !cancelled) {
+            executor.execute(next);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Interrupts running downloads and drops queued ones.
+     * Futures of tasks that did not finish are cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+
+        for (HostQueue queue : hosts.values()) {
+            synchronized (queue) {
+                queue.pending.clear();
+            }
+        }
+        for (CompletableFuture<?> future : inFlight) {
+            future.cancel(false);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private static class HostQueue {
+        private int active;
+        private final Queue<Job> pending = new PriorityQueue<>();
+    }
+
+    /**
+     * Queued task, ordered by priority and then by submission
+     */
+    private static class Job implements Runnable, Comparable<Job> {
+        private final ResourcePriority priority;
+        private final long sequence;
+        private final Runnable body;
+
+        private Job(ResourcePriority priority, long sequence, Runnable body) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
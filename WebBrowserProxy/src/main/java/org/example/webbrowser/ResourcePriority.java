@@ -0,0 +1,25 @@
+package org.example.webbrowser;
+
+/**
+ * Download priority of a page resource, highest first.
+ *
+ * - CRITICAL: render-blocking stylesheets and head scripts
+ * - HIGH: blocking scripts in the body, fonts, images marked fetchpriority="high"
+ * - MEDIUM: the first images of the document (likely above the fold)
+ * - LOW: async, deferred and module scripts, later images, backgrounds
+ * - LOWEST: icons, images with loading="lazy" or fetchpriority="low"
+ */
+public enum ResourcePriority {
+    CRITICAL,
+    HIGH,
+    MEDIUM,
+    LOW,
+    LOWEST;
+
+    /**
+     * @return true if the page cannot render before this resource arrives
+     */
+    public boolean isRenderBlocking() {
+        return this == CRITICAL;
+    }
+}
@@ -0,0 +1,424 @@
+package org.example.webbrowser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks one image candidate from srcset, sizes and picture source lists
+ * for a viewport, the way a browser would.
+ *
+ * Width descriptors are turned into densities using the slot width from
+ * sizes (100vw if there is none); the smallest candidate that covers the
+ * device pixel ratio wins, otherwise the densest one. Media queries support
+ * width, height, resolution and orientation features. Formats the WebView
+ * cannot decode (WebP, AVIF, JPEG XL) are not selected.
+ */
+public final class ResponsiveImages {
+    private static final double EM_SIZE = 16;
+    private static final String[] UNSUPPORTED_TYPES = {"image/webp", "image/avif", "image/jxl"};
+    private static final String[] UNSUPPORTED_EXTENSIONS = {".webp", ".avif", ".jxl"};
+
+    private ResponsiveImages() {
+    }
+
+    /**
+     * @param srcset Candidate list, or null
+     * @param sizes  Slot sizes, or null
+     * @return URL of the best candidate, or null if the list has no usable candidate
+     */
+    public static String select(String srcset, String sizes, Viewport viewport) {
+        if (srcset == null || srcset.isBlank()) {
+            return null;
+        }
+
+        double slotWidth = sizes == null || sizes.isBlank() ? viewport.getWidth() : evaluateSizes(sizes, viewport);
+        List<Candidate> candidates = new ArrayList<>();
+        for (Candidate candidate : parseSrcset(srcset, slotWidth)) {
+            if (!hasUnsupportedExtension(candidate.url)) {
+                candidates.add(candidate);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        Candidate best = null;
+        Candidate densest = candidates.get(0);
+        for (Candidate candidate : candidates) {
+            if (candidate.density >= viewport.getDevicePixelRatio()
+                    && (best == null || candidate.density < best.density)) {
+                best = candidate;
+            }
+            if (candidate.density > densest.density) {
+                densest = candidate;
+            }
+        }
+        return best != null ? best.url : densest.url;
+    }
+
+    /**
+     * @return true if the WebView can decode images of a source's type attribute
+     */
+    public static boolean isSupportedType(String type) {
+        if (type == null || type.isBlank()) {
+            return true;
+        }
+        String lower = type.trim().toLowerCase(Locale.ROOT);
+        for (String unsupported : UNSUPPORTED_TYPES) {
+            if (lower.startsWith(unsupported)) {
+                return false;
+            }
+        }
+        return lower.startsWith("image/");
+    }
+
+    /**
+     * Evaluates a media query list; unknown features never match
+     *
+     * @param media Media attribute, or null (matches)
+     */
+    public static boolean matchesMedia(String media, Viewport viewport) {
+        if (media == null || media.isBlank()) {
+            return true;
+        }
+        for (String query : splitTopLevel(media)) {
+            if (matchesQuery(query.trim().toLowerCase(Locale.ROOT), viewport)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesQuery(String query, Viewport viewport) {
+        boolean negated = false;
+        if (query.startsWith("not ")) {
+            negated = true;
+            query = query.substring(4).trim();
+        } else if (query.startsWith("only ")) {
+            query = query.substring(5).trim();
+        }
+
+        boolean matches = true;
+        for (String part : query.split("\\s+and\\s+")) {
+            part = part.trim();
+            if (part.equals("screen") || part.equals("all") || part.isEmpty()) {
+                continue;
+            }
+            if (!part.startsWith("(") || !part.endsWith(")")) {
+                // print and other media types
+                matches = false;
+                break;
+            }
+            if (!matchesFeature(part.substring(1, part.length() - 1).trim(), viewport)) {
+                matches = false;
+                break;
+            }
+        }
+        return negated != matches;
+    }
+
+    private static boolean matchesFeature(String feature, Viewport viewport) {
+        int colon = feature.indexOf(':');
+        if (colon < 0) {
+            return false;
+        }
+        String name = feature.substring(0, colon).trim();
+        String value = feature.substring(colon + 1).trim();
+
+        switch (name) {
+            case "min-width":
+                return viewport.getWidth() >= parseLength(value, viewport);
+            case "max-width":
+                return viewport.getWidth() <= parseLength(value, viewport);
+            case "min-height":
+                return viewport.getHeight() >= parseLength(value, viewport);
+            case "max-height":
+                return viewport.getHeight() <= parseLength(value, viewport);
+            case "orientation":
+                boolean portrait = viewport.getHeight() >= viewport.getWidth();
+                return value.equals(portrait ? "portrait" : "landscape");
+            case "min-resolution":
+            case "-webkit-min-device-pixel-ratio":
+            case "min-device-pixel-ratio":
+                return viewport.getDevicePixelRatio() >= parseResolution(value);
+            case "max-resolution":
+            case "-webkit-max-device-pixel-ratio":
+            case "max-device-pixel-ratio":
+                return viewport.getDevicePixelRatio() <= parseResolution(value);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Slot width in CSS pixels for the first matching entry of a sizes list
+     */
+    static double evaluateSizes(String sizes, Viewport viewport) {
+        for (String entry : splitTopLevel(sizes)) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+
+            // The length is the last component, the media condition comes before it
+            int lengthStart = findLengthStart(entry);
+            if (lengthStart < 0) {
+                continue;
+            }
+
+            String condition = entry.substring(0, lengthStart).trim();
+            String length = entry.substring(lengthStart).trim();
+            if (condition.isEmpty() || matchesMedia(condition, viewport)) {
+                double width = parseLength(length, viewport);
+                if (width >= 0) {
+                    return width;
+                }
+            }
+        }
+        return viewport.getWidth();
+    }
+
+    /**
+     * Finds the length at the end of a sizes entry: a function such as
+     * calc(...) with balanced parentheses, or the last token
+     *
+     * @return Start of the length, or -1 if the entry ends with a bare media condition
+     */
+    private static int findLengthStart(String entry) {
+        if (!entry.endsWith(")")) {
+            int i = entry.length();
+            while (i > 0 && !Character.isWhitespace(entry.charAt(i - 1))) {
+                i--;
+            }
+            return i;
+        }
+
+        int depth = 0;
+        int open = entry.length() - 1;
+        for (; open >= 0; open--) {
+            char c = entry.charAt(open);
+            if (c == ')') {
+                depth++;
+            } else if (c == '(' && --depth == 0) {
+                break;
+            }
+        }
+        if (open < 0) {
+            return -1;
+        }
+
+        int nameStart = open;
+        while (nameStart > 0 && Character.isLetter(entry.charAt(nameStart - 1))) {
+            nameStart--;
+        }
+        return nameStart < open ? nameStart : -1;
+    }
+
+    /**
+     * @return Length in CSS pixels, or -1 if it cannot be evaluated
+     */
+    private static double parseLength(String value, Viewport viewport) {
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        if (lower.equals("auto")) {
+            return viewport.getWidth();
+        }
+        if (lower.startsWith("calc(") && lower.endsWith(")")) {
+            return evaluateCalc(lower.substring(5, lower.length() - 1), viewport);
+        }
+
+        try {
+            if (lower.endsWith("px")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 2));
+            }
+            if (lower.endsWith("rem")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 3)) * EM_SIZE;
+            }
+            if (lower.endsWith("em")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 2)) * EM_SIZE;
+            }
+            if (lower.endsWith("vw")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 2)) * viewport.getWidth() / 100;
+            }
+            if (lower.endsWith("vh")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 2)) * viewport.getHeight() / 100;
+            }
+            if (lower.equals("0")) {
+                return 0;
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Evaluates sums and differences of lengths, e.g. "100vw - 2rem"
+     */
+    private static double evaluateCalc(String expression, Viewport viewport) {
+        String[] tokens = expression.trim().split("\\s+");
+        double result = parseLength(tokens[0], viewport);
+        for (int i = 1; i + 1 < tokens.length && result >= 0; i += 2) {
+            double operand = parseLength(tokens[i + 1], viewport);
+            if (operand < 0) {
+                return -1;
+            }
+            if (tokens[i].equals("+")) {
+                result += operand;
+            } else if (tokens[i].equals("-")) {
+                result -= operand;
+            } else {
+                return -1;
+            }
+        }
+        return result;
+    }
+
+    private static double parseResolution(String value) {
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        try {
+            if (lower.endsWith("dppx")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 4));
+            }
+            if (lower.endsWith("dpi")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 3)) / 96;
+            }
+            if (lower.endsWith("x")) {
+                return Double.parseDouble(lower.substring(0, lower.length() - 1));
+            }
+            return Double.parseDouble(lower);
+        } catch (NumberFormatException e) {
+            return Double.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Parses a srcset attribute following the HTML candidate syntax, so URLs
+     * with commas in them are kept whole
+     */
+    static List<Candidate> parseSrcset(String srcset, double slotWidth) {
+        List<Candidate> candidates = new ArrayList<>();
+        int length = srcset.length();
+        int i = 0;
+
+        while (i < length) {
+            while (i < length && (Character.isWhitespace(srcset.charAt(i)) || srcset.charAt(i) == ',')) {
+                i++;
+            }
+            int urlStart = i;
+            while (i < length && !Character.isWhitespace(srcset.charAt(i))) {
+                i++;
+            }
+            String url = srcset.substring(urlStart, i);
+            if (url.isEmpty()) {
+                break;
+            }
+
+            String descriptor = "";
+            if (url.endsWith(",")) {
+                url = url.replaceAll(",+$", "");
+            } else {
+                int descriptorStart = i;
+                int depth = 0;
+                while (i < length && (srcset.charAt(i) != ',' || depth > 0)) {
+                    char c = srcset.charAt(i);
+                    if (c == '(') {
+                        depth++;
+                    } else if (c == ')') {
+                        depth--;
+                    }
+                    i++;
+                }
+                descriptor = srcset.substring(descriptorStart, i).trim().toLowerCase(Locale.ROOT);
+            }
+
+            double density = parseDescriptor(descriptor, slotWidth);
+            if (!url.isEmpty() && density > 0) {
+                candidates.add(new Candidate(url, density));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return Density of a candidate, or -1 if the descriptor is invalid
+     */
+    private static double parseDescriptor(String descriptor, double slotWidth) {
+        double density = 1;
+        for (String part : descriptor.split("\\s+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            try {
+                if (part.endsWith("w")) {
+                    double width = Double.parseDouble(part.substring(0, part.length() - 1));
+                    density = slotWidth > 0 ? width / slotWidth : width;
+                } else if (part.endsWith("x")) {
+                    density = Double.parseDouble(part.substring(0, part.length() - 1));
+                } else if (!part.endsWith("h")) {
+                    return -1;
+                }
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return density;
+    }
+
+    private static boolean hasUnsupportedExtension(String url) {
+        String path = url.toLowerCase(Locale.ROOT);
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        for (String extension : UNSUPPORTED_EXTENSIONS) {
+            if (path.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits on commas that are not inside parentheses
+     */
+    private static List<String> splitTopLevel(String value) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+    }
+
+    /**
+     * An image URL with its effective pixel density
+     */
+    static class Candidate {
+        private final String url;
+        private final double density;
+
+        Candidate(String url, double density) {
+            this.url = url;
+            this.density = density;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        double getDensity() {
+            return density;
+        }
+    }
+}
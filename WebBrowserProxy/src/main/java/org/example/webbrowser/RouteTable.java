@@ -0,0 +1,171 @@
+package org.example.webbrowser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routing index for request paths.
+ *
+ * Plain paths ("/index.html") are kept in a hash map, so looking them up
+ * does not depend on the number of routes. Patterns with wildcards go into
+ * a trie of path segments:
+ * - a "*" segment in the middle of a pattern matches exactly one segment
+ * - a trailing "*" matches everything below the prefix ("/docs/*")
+ *
+ * Exact routes win over patterns, literal segments over wildcards and
+ * longer prefixes over shorter ones.
+ */
+public class RouteTable<T> {
+    private static final String WILDCARD = "*";
+
+    private final Map<String, T> exactRoutes;
+    private final Node<T> root;
+    private int size;
+
+    public RouteTable() {
+        this.exactRoutes = new HashMap<>();
+        this.root = new Node<>();
+    }
+
+    /**
+     * Adds a route, replacing an existing route with the same pattern
+     *
+     * @param pattern Path, or path pattern with "*" segments
+     * @param value   Route target
+     */
+    public synchronized void add(String pattern, T value) {
+        String path = normalize(pattern);
+        if (!path.contains(WILDCARD)) {
+            if (exactRoutes.put(path, value) == null) {
+                size++;
+            }
+            return;
+        }
+
+        List<String> segments = split(path);
+        Node<T> node = root;
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (segment.equals(WILDCARD) && i == segments.size() - 1) {
+                if (node.prefixValue == null) {
+                    size++;
+                }
+                node.prefixValue = value;
+                return;
+            }
+            node = node.children.computeIfAbsent(segment, s -> new Node<>());
+        }
+        if (node.value == null) {
+            size++;
+        }
+        node.value = value;
+    }
+
+    /**
+     * Finds the route for a request path
+     *
+     * @return Match with the route target and the part of the path below a
+     * prefix route, or null if no route matches
+     */
+    public synchronized Match<T> lookup(String requestPath) {
+        String path = normalize(requestPath);
+        T exact = exactRoutes.get(path);
+        if (exact != null) {
+            return new Match<>(exact, "");
+        }
+        return match(root, split(path), 0);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private Match<T> match(Node<T> node, List<String> segments, int index) {
+        if (index == segments.size()) {
+            if (node.value != null) {
+                return new Match<>(node.value, "");
+            }
+            return node.prefixValue != null ? new Match<>(node.prefixValue, "") : null;
+        }
+
+        Node<T> literal = node.children.get(segments.get(index));
+        if (literal != null) {
+            Match<T> match = match(literal, segments, index + 1);
+            if (match != null) {
+                return match;
+            }
+        }
+
+        Node<T> wildcard = node.children.get(WILDCARD);
+        if (wildcard != null) {
+            Match<T> match = match(wildcard, segments, index + 1);
+            if (match != null) {
+                return match;
+            }
+        }
+
+        if (node.prefixValue != null) {
+            return new Match<>(node.prefixValue, String.join("/", segments.subList(index, segments.size())));
+        }
+        return null;
+    }
+
+    /**
+     * Drops the query and fragment and makes the path start with "/"
+     */
+    private static String normalize(String path) {
+        int end = path.length();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = path.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        String result = path.substring(0, end);
+        return result.startsWith("/") ? result : "/" + result;
+    }
+
+    private static List<String> split(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Result of a lookup
+     */
+    public static class Match<T> {
+        private final T value;
+        private final String remainder;
+
+        private Match(T value, String remainder) {
+            this.value = value;
+            this.remainder = remainder;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return Path below the matched prefix ("" for exact and pattern matches)
+         */
+        public String getRemainder() {
+            return remainder;
+        }
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private T value;
+        private T prefixValue;
+    }
+}
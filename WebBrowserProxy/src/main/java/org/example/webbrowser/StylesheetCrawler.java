@@ -0,0 +1,322 @@
+package org.example.webbrowser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes downloaded stylesheets self-contained.
+ *
+ * A stylesheet is scanned for url() references and @import rules. Its
+ * fonts, images and imported stylesheets are downloaded concurrently
+ * (imported stylesheets are crawled the same way), then a copy with every
+ * reference pointing at the cached file is stored in the content store.
+ *
+ * Every stylesheet is crawled once per page. Imports that would wait on
+ * each other in a cycle keep their original URL, as do dependencies that
+ * fail to download.
+ */
+public class StylesheetCrawler {
+    private static final String[] FONT_EXTENSIONS = {".woff", ".woff2", ".ttf", ".eot", ".otf"};
+
+    /**
+     * Downloads a resource into the content store
+     */
+    public interface Downloader {
+        /**
+         * @return Future completed with the cache:// URL of the stored resource
+         */
+        CompletableFuture<String> download(String url, ResourcePriority priority);
+    }
+
+    private final ContentStore.Lease lease;
+    private final Downloader downloader;
+    private final Set<String> blobs;
+    private final Map<String, CompletableFuture<String>> stylesheets = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> imports = new HashMap<>();
+
+    /**
+     * @param lease Lease of the page fetch, rewritten stylesheets are stored through it
+     * @param blobs Receives the names of the rewritten stylesheet blobs
+     */
+    public StylesheetCrawler(ContentStore.Lease lease, Downloader downloader, Set<String> blobs) {
+        this.lease = lease;
+        this.downloader = downloader;
+        this.blobs = blobs;
+    }
+
+    /**
+     * Downloads and crawls a stylesheet
+     *
+     * @return Future completed with the cache:// URL of the rewritten stylesheet
+     */
+    public CompletableFuture<String> crawl(String url, ResourcePriority priority) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<String> existing = stylesheets.putIfAbsent(url, result);
+        if (existing != null) {
+            return existing;
+        }
+
+        downloader.download(url, priority)
+                .thenCompose(localUrl -> rewrite(url, localUrl))
+                .whenComplete((localUrl, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(localUrl);
+                    }
+                });
+        return result;
+    }
+
+    private CompletableFuture<String> rewrite(String url, String localUrl) {
+        // Latin-1 maps every byte to one char, so bytes outside the
+        // rewritten URLs are kept whatever the stylesheet's charset is
+        String css;
+        try {
+            css = new String(Files.readAllBytes(CacheURLStreamHandler.toPath(localUrl)), StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        List<Reference> references = scan(css);
+        if (references.isEmpty()) {
+            return CompletableFuture.completedFuture(localUrl);
+        }
+
+        List<CompletableFuture<String>> replacements = new ArrayList<>();
+        for (Reference reference : references) {
+            replacements.add(resolveDependency(url, reference));
+        }
+
+        return CompletableFuture.allOf(replacements.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            StringBuilder rewritten = new StringBuilder(css.length() + references.size() * 64);
+            int position = 0;
+            for (int i = 0; i < references.size(); i++) {
+                Reference reference = references.get(i);
+                rewritten.append(css, position, reference.start).append(replacements.get(i).join());
+                position = reference.end;
+            }
+            rewritten.append(css, position, css.length());
+
+            try {
+                byte[] bytes = rewritten.toString().getBytes(StandardCharsets.ISO_8859_1);
+                String blob = lease.store(Channels.newChannel(new ByteArrayInputStream(bytes)),
+                        ".css", 64 * 1024, Long.MAX_VALUE);
+                blobs.add(blob);
+                return CacheURLStreamHandler.toURL(lease.getStore().resolve(blob));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * @return Future completed with the text that replaces the reference
+     */
+    private CompletableFuture<String> resolveDependency(String stylesheetUrl, Reference reference) {
+        String absoluteUrl = resolve(stylesheetUrl, reference.url);
+        if (absoluteUrl == null) {
+            return CompletableFuture.completedFuture(reference.url);
+        }
+
+        int hash = absoluteUrl.indexOf('#');
+        String fragment = hash >= 0 ? absoluteUrl.substring(hash) : "";
+        String resourceUrl = hash >= 0 ? absoluteUrl.substring(0, hash) : absoluteUrl;
+
+        CompletableFuture<String> localUrl;
+        if (reference.isImport || resourceUrl.toLowerCase(Locale.ROOT).contains(".css")) {
+            if (!addImport(stylesheetUrl, resourceUrl)) {
+                System.out.println("Import cycle, keeping original URL: " + resourceUrl);
+                return CompletableFuture.completedFuture(absoluteUrl);
+            }
+            localUrl = crawl(resourceUrl, ResourcePriority.CRITICAL);
+        } else {
+            localUrl = downloader.download(resourceUrl, isFont(resourceUrl) ? ResourcePriority.HIGH : ResourcePriority.LOW);
+        }
+
+        return localUrl.handle((local, error) -> error == null ? local + fragment : absoluteUrl);
+    }
+
+    /**
+     * Records that a stylesheet waits for an imported one
+     *
+     * @return false if the import closes a cycle and must not be waited for
+     */
+    private synchronized boolean addImport(String from, String to) {
+        if (from.equals(to) || reaches(to, from, new HashSet<>())) {
+            return false;
+        }
+        imports.computeIfAbsent(from, key -> new HashSet<>()).add(to);
+        return true;
+    }
+
+    private boolean reaches(String from, String to, Set<String> visited) {
+        if (!visited.add(from)) {
+            return false;
+        }
+        for (String next : imports.getOrDefault(from, Set.of())) {
+            if (next.equals(to) || reaches(next, to, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Absolute http(s) URL, or null for references that are not downloaded
+     */
+    private static String resolve(String baseUrl, String reference) {
+        String value = reference.trim();
+        if (value.isEmpty() || value.startsWith("data:") || value.startsWith("#") || value.startsWith("about:")) {
+            return null;
+        }
+        try {
+            String resolved = new URI(baseUrl).resolve(value.replace(" ", "%20")).toString();
+            return resolved.startsWith("http://") || resolved.startsWith("https://") ? resolved : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isFont(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        for (String extension : FONT_EXTENSIONS) {
+            if (lower.contains(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds url() values and @import strings, skipping comments
+     */
+    static List<Reference> scan(String css) {
+        List<Reference> references = new ArrayList<>();
+        int length = css.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = css.charAt(i);
+            if (c == '/' && i + 1 < length && css.charAt(i + 1) == '*') {
+                int end = css.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if ((c == 'u' || c == 'U') && css.regionMatches(true, i, "url(", 0, 4)) {
+                i = scanUrl(css, i, references);
+            } else if (c == '@' && css.regionMatches(true, i, "@import", 0, 7)) {
+                i = scanImport(css, i + 7, references);
+            } else {
+                i++;
+            }
+        }
+        return references;
+    }
+
+    private static int scanUrl(String css, int start, List<Reference> references) {
+        int i = start + 4;
+        int length = css.length();
+        while (i < length && Character.isWhitespace(css.charAt(i))) {
+            i++;
+        }
+
+        char quote = 0;
+        if (i < length && (css.charAt(i) == '"' || css.charAt(i) == '\'')) {
+            quote = css.charAt(i);
+            i++;
+        }
+
+        int valueStart = i;
+        while (i < length && css.charAt(i) != (quote != 0 ? quote : ')')) {
+            i++;
+        }
+        int valueEnd = i;
+        if (quote == 0) {
+            while (valueEnd > valueStart && Character.isWhitespace(css.charAt(valueEnd - 1))) {
+                valueEnd--;
+            }
+        }
+
+        if (i >= length) {
+            return start + 4;
+        }
+        if (valueEnd > valueStart) {
+            boolean isImport = isAfterImport(css, start);
+            references.add(new Reference(valueStart, valueEnd, css.substring(valueStart, valueEnd), isImport));
+        }
+        return i + 1;
+    }
+
+    /**
+     * Handles @import "file.css"; url() forms are found by scanUrl
+     */
+    private static int scanImport(String css, int from, List<Reference> references) {
+        int i = from;
+        int length = css.length();
+        while (i < length && Character.isWhitespace(css.charAt(i))) {
+            i++;
+        }
+        if (i >= length || (css.charAt(i) != '"' && css.charAt(i) != '\'')) {
+            return i;
+        }
+
+        char quote = css.charAt(i);
+        int valueStart = i + 1;
+        int valueEnd = css.indexOf(quote, valueStart);
+        if (valueEnd < 0) {
+            return length;
+        }
+        if (valueEnd > valueStart) {
+            references.add(new Reference(valueStart, valueEnd, css.substring(valueStart, valueEnd), true));
+        }
+        return valueEnd + 1;
+    }
+
+    private static boolean isAfterImport(String css, int urlStart) {
+        int i = urlStart - 1;
+        while (i >= 0 && Character.isWhitespace(css.charAt(i))) {
+            i--;
+        }
+        int importStart = i - "@import".length() + 1;
+        return importStart >= 0 && css.regionMatches(true, importStart, "@import", 0, "@import".length());
+    }
+
+    /**
+     * A URL in a stylesheet, with its position in the source
+     */
+    static class Reference {
+        private final int start;
+        private final int end;
+        private final String url;
+        private final boolean isImport;
+
+        Reference(int start, int end, String url, boolean isImport) {
+            this.start = start;
+            this.end = end;
+            this.url = url;
+            this.isImport = isImport;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        boolean isImport() {
+            return isImport;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.webbrowser;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interceptor that measures how long response handling takes
+ */
+public class TimingInterceptor implements HTTPInterceptor {
+    private final ThreadLocal<Long> startTime = new ThreadLocal<>();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder unhandled = new LongAdder();
+
+    @Override
+    public void before(HTTPResponse response) {
+        startTime.set(System.nanoTime());
+    }
+
+    @Override
+    public void after(HTTPResponse response, boolean handled) {
+        Long start = startTime.get();
+        if (start == null) {
+            return;
+        }
+        startTime.remove();
+        totalNanos.add(System.nanoTime() - start);
+        count.increment();
+        if (!handled) {
+            unhandled.increment();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getUnhandledCount() {
+        return unhandled.sum();
+    }
+
+    /**
+     * @return Average handling time in microseconds
+     */
+    public double getAverageMicros() {
+        long responses = count.sum();
+        return responses == 0 ? 0 : totalNanos.sum() / 1000.0 / responses;
+    }
+
+    /**
+     * @return Short statistics line for logging
+     */
+    public String getStats() {
+        return String.format("responses=%d, unhandled=%d, avg=%.1fus", getCount(), getUnhandledCount(), getAverageMicros());
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.webbrowser;
+
+/**
+ * Size and pixel density of the area pages are rendered in, used to pick
+ * responsive image candidates. The controller keeps the current viewport
+ * in sync with the WebView.
+ */
+public final class Viewport {
+    public static final double DEFAULT_WIDTH = 830;
+    public static final double DEFAULT_HEIGHT = 515;
+
+    private static volatile Viewport current = new Viewport(DEFAULT_WIDTH, DEFAULT_HEIGHT, 1.0);
+
+    private final double width;
+    private final double height;
+    private final double devicePixelRatio;
+
+    /**
+     * @param width            CSS pixels
+     * @param height           CSS pixels
+     * @param devicePixelRatio Device pixels per CSS pixel
+     */
+    public Viewport(double width, double height, double devicePixelRatio) {
+        this.width = width > 0 ? width : DEFAULT_WIDTH;
+        this.height = height > 0 ? height : DEFAULT_HEIGHT;
+        this.devicePixelRatio = devicePixelRatio > 0 ? devicePixelRatio : 1.0;
+    }
+
+    public static Viewport current() {
+        return current;
+    }
+
+    public static void setCurrent(Viewport viewport) {
+        current = viewport;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getDevicePixelRatio() {
+        return devicePixelRatio;
+    }
+
+    @Override
+    public String toString() {
+        return (int) width + "x" + (int) height + "@" + devicePixelRatio + "x";
+    }
+}
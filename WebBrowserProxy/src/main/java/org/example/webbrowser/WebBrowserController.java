@@ -1,17 +1,27 @@
 package org.example.webbrowser;
 
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.TextField;
+import javafx.stage.Screen;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebHistory;
 import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class WebBrowserController implements Initializable {
     @FXML
@@ -32,6 +42,43 @@ public class WebBrowserController implements Initializable {
 
     // Chain of Responsibility for HTTP response handling
     private HTTPHandlerChain handlerChain;
+    private final TimingInterceptor handlerTiming = new TimingInterceptor();
+
+    // Background navigation, at most one is active
+    private final ExecutorService navigationExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "navigation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private NavigationTask currentNavigation;
+
+    // Warms the cache for links the user is likely to open next
+    private final LinkPrefetcher linkPrefetcher = new LinkPrefetcher();
+
+    private static final java.util.regex.Pattern IMG_PATTERN = java.util.regex.Pattern.compile(
+            "<img([^>]*?)src=[\"']([^\"']*)[\"']([^>]*?)>",
+            java.util.regex.Pattern.CASE_INSENSITIVE
+    );
+
+    // Responsive candidates are resolved by the fetcher, the placeholder src must win
+    private static final java.util.regex.Pattern SRCSET_PATTERN = java.util.regex.Pattern.compile(
+            "\\s(?:srcset|sizes)\\s*=\\s*(?:\"[^\"]*\"|'[^']*'|[^\\s>]+)", java.util.regex.Pattern.CASE_INSENSITIVE);
+    private static final java.util.regex.Pattern SOURCE_SRCSET_PATTERN = java.util.regex.Pattern.compile(
+            "(<source\\b[^>]*?\\s)srcset(\\s*=)", java.util.regex.Pattern.CASE_INSENSITIVE);
+
+    private static final java.util.regex.Pattern WIDTH_PATTERN = java.util.regex.Pattern.compile(
+            "(?<![\\w-])width\\s*=\\s*[\"']?(\\d{1,5})(?:px)?[\"']?(?=[\\s/>]|$)", java.util.regex.Pattern.CASE_INSENSITIVE);
+    private static final java.util.regex.Pattern HEIGHT_PATTERN = java.util.regex.Pattern.compile(
+            "(?<![\\w-])height\\s*=\\s*[\"']?(\\d{1,5})(?:px)?[\"']?(?=[\\s/>]|$)", java.util.regex.Pattern.CASE_INSENSITIVE);
+
+    // Placeholders of the current page that were not loaded yet, by id
+    private volatile Map<String, ImageProxy> imageProxies = new ConcurrentHashMap<>();
+    private volatile Map<String, CompletableFuture<String>> backgroundImages = Map.of();
+    private final ExecutorService imageExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "image-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
@@ -42,8 +89,10 @@ public class WebBrowserController implements Initializable {
         addressBar = new AddressBar();
         browser.setAddressBar(addressBar);
 
-        // Initialize Chain of Responsibility for HTTP handling
+        // Status-code dispatch for this window's responses, with timing of every response.
+        // The window has its own chain, so the timing does not leak into the shared one
         handlerChain = new HTTPHandlerChain();
+        handlerChain.addInterceptor(handlerTiming);
 
         // Initialize local test web server
         initializeLocalServer();
@@ -53,12 +102,19 @@ public class WebBrowserController implements Initializable {
             if (newState == Worker.State.SUCCEEDED) {
                 onPageLoaded();
                 injectLinkHandler();
+                linkPrefetcher.resume();
+                injectLazyImageLoader();
             } else if (newState == Worker.State.FAILED) {
                 System.err.println("Page loading failed");
                 browser.handleError(500);
             }
         });
 
+        // Responsive images are picked for the size of the view
+        webView.widthProperty().addListener((obs, oldWidth, newWidth) -> updateViewport());
+        webView.heightProperty().addListener((obs, oldHeight, newHeight) -> updateViewport());
+        updateViewport();
+
         // Listen for location changes (navigation)
         webEngine.locationProperty().addListener((obs, oldLocation, newLocation) -> {
             if (newLocation != null && !newLocation.isEmpty()) {
@@ -70,6 +126,15 @@ public class WebBrowserController implements Initializable {
         loadPage();
     }
 
+    /**
+     * Publishes the view size and screen scale used to select responsive images
+     */
+    private void updateViewport() {
+        double width = webView.getWidth() > 0 ? webView.getWidth() : webView.getPrefWidth();
+        double height = webView.getHeight() > 0 ? webView.getHeight() : webView.getPrefHeight();
+        Viewport.setCurrent(new Viewport(width, height, Screen.getPrimary().getOutputScaleX()));
+    }
+
     /**
      * Injects JavaScript to handle link clicks
      */
@@ -123,6 +188,80 @@ public class WebBrowserController implements Initializable {
                         }
                     }, true);
                     
+                    // Report links that are likely to be opened next for prefetching
+                    function linkOf(node) {
+                        while (node && node.tagName !== 'A') {
+                            node = node.parentElement;
+                        }
+                        return node;
+                    }
+                    
+                    function hint(link, reason) {
+                        if (!link) return;
+                        var href = link.getAttribute('href');
+                        if (!href ||
+                            href.startsWith('#') ||
+                            href.startsWith('javascript:') ||
+                            href.startsWith('mailto:') ||
+                            href.startsWith('tel:')) {
+                            return;
+                        }
+                        window.javaController.onLinkHint(href, reason);
+                    }
+                    
+                    // Hover counts once the pointer rests on a link
+                    var hoverTimer = null;
+                    document.addEventListener('mouseover', function(e) {
+                        var link = linkOf(e.target);
+                        clearTimeout(hoverTimer);
+                        if (link) {
+                            hoverTimer = setTimeout(function() { hint(link, 'hover'); }, 100);
+                        }
+                    }, true);
+                    
+                    document.addEventListener('touchstart', function(e) {
+                        hint(linkOf(e.target), 'touch');
+                    }, true);
+                    
+                    // Links in the viewport, each reported once
+                    var reported = {};
+                    function reportVisible(link) {
+                        var href = link.getAttribute('href');
+                        if (reported[href]) return;
+                        reported[href] = true;
+                        hint(link, 'viewport');
+                    }
+                    
+                    if ('IntersectionObserver' in window) {
+                        var observer = new IntersectionObserver(function(entries) {
+                            entries.forEach(function(entry) {
+                                if (entry.isIntersecting) {
+                                    observer.unobserve(entry.target);
+                                    reportVisible(entry.target);
+                                }
+                            });
+                        });
+                        document.querySelectorAll('a[href]').forEach(function(link) {
+                            observer.observe(link);
+                        });
+                    } else {
+                        var scanTimer = null;
+                        var scan = function() {
+                            scanTimer = null;
+                            var height = window.innerHeight;
+                            document.querySelectorAll('a[href]').forEach(function(link) {
+                                var rect = link.getBoundingClientRect();
+                                if (rect.width > 0 && rect.bottom > 0 && rect.top < height) {
+                                    reportVisible(link);
+                                }
+                            });
+                        };
+                        window.addEventListener('scroll', function() {
+                            if (!scanTimer) scanTimer = setTimeout(scan, 200);
+                        });
+                        scan();
+                    }
+                    
                     console.log('Link handler installed successfully');
                 })();
                 """;
@@ -164,6 +303,21 @@ public class WebBrowserController implements Initializable {
         }
     }
 
+    /**
+     * Called from JavaScript when a link is hovered, touched or scrolled into view
+     *
+     * @param reason "touch", "hover" or "viewport"
+     */
+    public void onLinkHint(String href, String reason) {
+        String absoluteUrl = resolveUrl(webEngine.getLocation(), href);
+
+        // Pages of the local test server are not fetched over the network
+        if (absoluteUrl.contains("test.com")) {
+            return;
+        }
+        linkPrefetcher.hint(absoluteUrl, LinkPrefetcher.Hint.fromName(reason));
+    }
+
     /**
      * Resolves relative URL to absolute based on current page
      */
@@ -210,14 +364,30 @@ public class WebBrowserController implements Initializable {
             return fileUrl;
         }
 
+        try {
+            // Pages written by the fetcher record their URL next to index.html
+            Path file = Path.of(java.net.URI.create(fileUrl));
+            CacheMetadata metadata = CacheMetadata.load(
+                    CacheMetadata.metadataPath(file.resolveSibling("index.html")));
+            if (metadata != null && metadata.getUrl() != null) {
+                return metadata.getUrl();
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a plain file URL, fall back to the directory name
+        }
+
         try {
             // Extract domain from cache path
-            // browser_cache/example_com/ -> example.com
+            // browser_cache/example_com~<path hash>/ -> example.com
             String path = fileUrl;
             int cacheIndex = path.indexOf("browser_cache");
             if (cacheIndex != -1) {
                 String afterCache = path.substring(cacheIndex + "browser_cache".length() + 1);
                 String domain = afterCache.split("/")[0];
+                int hashIndex = domain.indexOf('~');
+                if (hashIndex != -1) {
+                    domain = domain.substring(0, hashIndex);
+                }
 
                 // Convert example_com back to example.com
                 domain = domain.replace("_", ".");
@@ -252,9 +422,6 @@ public class WebBrowserController implements Initializable {
     private void initializeLocalServer() {
         localServer = new WebServer("test.com");
 
-        // Add test resources
-        localServer.addResource("index.html");
-
         // Create test page for successful response (200)
         WebPage testPage = new WebPage();
         String testHTML = """
@@ -292,9 +459,17 @@ public class WebBrowserController implements Initializable {
             """;
         testPage.setRawHTML(testHTML);
         testPage.parseHTML();
-        localServer.addPage(testPage);
+        localServer.addPage("/index.html", testPage);
 
         System.out.println("Local WebServer initialized at: " + localServer.getHost());
+
+        // The same pages are also reachable over HTTP on loopback
+        try {
+            int port = localServer.start(0);
+            System.out.println("Local WebServer listening on: http://127.0.0.1:" + port + "/");
+        } catch (IOException e) {
+            System.err.println("Failed to start local WebServer listener: " + e.getMessage());
+        }
         System.out.println("Test URLs:");
         System.out.println("  - test.com/index.html (200 OK)");
         System.out.println("  - test.com/404 (404 Not Found)");
@@ -336,45 +511,72 @@ public class WebBrowserController implements Initializable {
 
     /**
      * Loads real website using WebPageFetcher
-     * Downloads all resources and loads via file:// URL
+     * Downloads all resources in the background and loads via file:// URL
      */
     private void loadRealWebsite(String url) {
         System.out.println("\n" + "=".repeat(50));
         System.out.println("LOADING WEBSITE: " + url);
         System.out.println("=".repeat(50));
 
-        try {
-            // Create HTTP request
-            HTTPRequest request = new HTTPRequest(url, "GET");
+        // A new navigation replaces the previous one
+        cancelNavigation();
 
-            // Send request - WebPageFetcher will download everything
-            HTTPResponse response = request.sendRequest();
+        NavigationTask navigation = new NavigationTask(url, handlerChain);
+        navigation.setPrefetch(linkPrefetcher.takeOver(url));
+        navigation.setOnSucceeded(event -> {
+            if (navigation != currentNavigation) {
+                return;
+            }
+            currentNavigation = null;
 
-            // Process response through Chain of Responsibility
-            handlerChain.process(response);
+            HTTPResponse response = navigation.getValue();
 
-            // Load page via file:// URL
-            String fileUrl = response.getHeaders().get("X-File-URL");
+            // Load page via file:// URL, images are loaded lazily
+            imageProxies = navigation.getImageProxies();
+            backgroundImages = navigation.getBackgroundImages();
+            String fileUrl = navigation.getViewUrl();
+            if (fileUrl == null) {
+                fileUrl = response.getHeaders().get("X-File-URL");
+            }
             if (fileUrl != null) {
                 webEngine.load(fileUrl);
             } else {
                 webEngine.loadContent(response.getBody(), "text/html");
             }
 
-            // Parse page for our architecture
-            currentWebPage = new WebPage();
-            currentWebPage.setRawHTML(response.getBody());
-            currentWebPage.parseHTML();
+            currentWebPage = navigation.getWebPage();
+            System.out.println("Response handling: " + handlerTiming.getStats());
+            System.out.println("Link prefetching: " + linkPrefetcher.getStats());
+        });
+        navigation.setOnFailed(event -> {
+            if (navigation == currentNavigation) {
+                currentNavigation = null;
+                browser.handleError(500);
+            }
+        });
 
-        } catch (Exception e) {
-            browser.handleError(500);
+        currentNavigation = navigation;
+        navigationExecutor.execute(navigation);
+    }
+
+    /**
+     * Cancels the navigation in progress, interrupting its downloads
+     */
+    private void cancelNavigation() {
+        if (currentNavigation != null) {
+            System.out.println("Cancelling navigation: " + currentNavigation.getUrl());
+            currentNavigation.cancel(true);
+            currentNavigation = null;
         }
+        webEngine.getLoadWorker().cancel();
     }
 
     /**
      * Handles requests to local test server
      */
     private void handleLocalServerRequest(String url) {
+        cancelNavigation();
+
         String fullUrl = url;
         if (!url.startsWith("http://") && !url.startsWith("https://")) {
             fullUrl = "http://" + url;
@@ -410,9 +612,12 @@ public class WebBrowserController implements Initializable {
         handlerChain.process(response);
 
         String displayContent = response.getBody();
+        Map<String, ImageProxy> proxies = new ConcurrentHashMap<>();
         if (response.getStatusCode() == 200) {
-            displayContent = replaceImagesWithProxies(displayContent);
+            displayContent = replaceImagesWithProxies(displayContent, proxies, null);
         }
+        imageProxies = proxies;
+        backgroundImages = Map.of();
 
         webEngine.loadContent(displayContent, "text/html");
 
@@ -424,27 +629,34 @@ public class WebBrowserController implements Initializable {
     /**
      * Replaces all <img> tags with proxy placeholder images
      *
-     * @param html Original HTML content
+     * Every placeholder gets a data-proxy-id; the ImageProxy for it is put into
+     * proxies and loads the real image only when it becomes visible.
+     *
+     * @param html    Original HTML content
+     * @param proxies Receives the proxy of every replaced image by id
+     * @param pageDir Directory relative image paths are read from, or null
      * @return HTML with images replaced by proxy placeholders
      */
-    private String replaceImagesWithProxies(String html) {
+    static String replaceImagesWithProxies(String html, Map<String, ImageProxy> proxies, Path pageDir) {
         if (html == null || html.isEmpty()) {
             return html;
         }
 
-        // Pattern to match <img> tags
-        java.util.regex.Pattern imgPattern = java.util.regex.Pattern.compile(
-                "<img([^>]*?)src=[\"']([^\"']*)[\"']([^>]*?)>",
-                java.util.regex.Pattern.CASE_INSENSITIVE
-        );
+        // Picture sources would override the placeholder
+        html = SOURCE_SRCSET_PATTERN.matcher(html).replaceAll("$1data-srcset$2");
 
-        java.util.regex.Matcher matcher = imgPattern.matcher(html);
-        StringBuffer result = new StringBuffer();
+        java.util.regex.Matcher matcher = IMG_PATTERN.matcher(html);
+        StringBuilder result = new StringBuilder(html.length());
 
         while (matcher.find()) {
-            String beforeSrc = matcher.group(1);
+            String beforeSrc = SRCSET_PATTERN.matcher(matcher.group(1)).replaceAll("");
             String originalSrc = matcher.group(2);
-            String afterSrc = matcher.group(3);
+            String afterSrc = SRCSET_PATTERN.matcher(matcher.group(3)).replaceAll("");
+
+            // Inline images and images that are already lazy are left as they are
+            if (originalSrc.startsWith("data:") || beforeSrc.contains("data-proxy-id")) {
+                continue;
+            }
 
             // Extract filename from path
             String fileName = originalSrc;
@@ -454,12 +666,17 @@ public class WebBrowserController implements Initializable {
             }
 
             // Create ImageProxy and get placeholder
-            ImageProxy proxy = new ImageProxy(fileName, originalSrc);
-            String placeholderDataURI = proxy.createPlaceholder();
+            String id = Integer.toString(proxies.size());
+            // Placeholders are shared by size
+            String attributes = beforeSrc + afterSrc;
+            ImageProxy proxy = new ImageProxy(fileName, getLocalImagePath(originalSrc, pageDir),
+                    getSizeAttribute(attributes, WIDTH_PATTERN), getSizeAttribute(attributes, HEIGHT_PATTERN));
+            proxies.put(id, proxy);
 
             // Replace with proxy placeholder
             String replacement = "<img" + beforeSrc +
-                    "src=\"" + placeholderDataURI + "\" " +
+                    "src=\"" + proxy.getContent() + "\" " +
+                    "data-proxy-id=\"" + id + "\" " +
                     "data-original-src=\"" + originalSrc + "\"" +
                     afterSrc + ">";
 
@@ -470,6 +687,165 @@ public class WebBrowserController implements Initializable {
         return result.toString();
     }
 
+    /**
+     * @return Pixel size from a width/height attribute, or 0 if it is missing or relative
+     */
+    private static int getSizeAttribute(String attributes, java.util.regex.Pattern pattern) {
+        java.util.regex.Matcher matcher = pattern.matcher(attributes);
+        if (!matcher.find()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return File an image src points to inside the page directory, or the src itself
+     */
+    private static String getLocalImagePath(String src, Path pageDir) {
+        if (pageDir == null || src.contains("://") || src.startsWith("//")) {
+            return src;
+        }
+        try {
+            String path = src.split("[?#]")[0];
+            return pageDir.resolve(path).normalize().toString();
+        } catch (InvalidPathException e) {
+            return src;
+        }
+    }
+
+    /**
+     * Injects JavaScript that reports placeholders entering the viewport
+     */
+    private void injectLazyImageLoader() {
+        try {
+            String script = """
+                (function() {
+                    if (window.lazyImagesInstalled) return;
+                    window.lazyImagesInstalled = true;
+
+                    // Visible ids are batched into one call to Java
+                    var pending = [];
+                    var timer = null;
+                    function report(img) {
+                        pending.push(img.getAttribute('data-proxy-id'));
+                        if (timer) return;
+                        timer = setTimeout(function() {
+                            timer = null;
+                            var ids = pending.join(',');
+                            pending = [];
+                            window.javaController.onImagesVisible(ids);
+                        }, 50);
+                    }
+
+                    var images = Array.prototype.slice.call(document.querySelectorAll('img[data-proxy-id]'));
+                    if ('IntersectionObserver' in window) {
+                        var observer = new IntersectionObserver(function(entries) {
+                            entries.forEach(function(entry) {
+                                if (entry.isIntersecting) {
+                                    observer.unobserve(entry.target);
+                                    report(entry.target);
+                                }
+                            });
+                        }, { rootMargin: '200px' });
+                        images.forEach(function(img) { observer.observe(img); });
+                    } else {
+                        // Fallback: check positions on scroll and resize
+                        var check = function() {
+                            var bottom = window.innerHeight + 200;
+                            images = images.filter(function(img) {
+                                var rect = img.getBoundingClientRect();
+                                if (rect.bottom >= -200 && rect.top <= bottom) {
+                                    report(img);
+                                    return false;
+                                }
+                                return true;
+                            });
+                            if (images.length === 0) {
+                                window.removeEventListener('scroll', check);
+                                window.removeEventListener('resize', check);
+                            }
+                        };
+                        window.addEventListener('scroll', check);
+                        window.addEventListener('resize', check);
+                        check();
+                    }
+                })();
+                """;
+
+            webEngine.executeScript(script);
+
+        } catch (Exception e) {
+            System.err.println("Failed to inject lazy image loader: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called from JavaScript with comma-separated ids of placeholders that became visible.
+     * Real images are resolved in the background and swapped in on the FX thread.
+     */
+    public void onImagesVisible(String ids) {
+        Map<String, ImageProxy> proxies = imageProxies;
+        Map<String, CompletableFuture<String>> downloads = backgroundImages;
+
+        for (String id : ids.split(",")) {
+            ImageProxy proxy = proxies.remove(id);
+            if (proxy == null) {
+                continue;
+            }
+
+            Runnable load = () -> {
+                proxy.display();
+                String src = proxy.isLoaded() ? proxy.getContent() : null;
+
+                Platform.runLater(() -> {
+                    // Page changed in the meantime
+                    if (proxies != imageProxies) {
+                        return;
+                    }
+                    swapImage(id, src);
+                });
+            };
+
+            // Images the page was written without are loaded from the cache once their download is in
+            CompletableFuture<String> download = downloads.get(proxy.getFilePath());
+            if (download == null) {
+                imageExecutor.execute(load);
+                continue;
+            }
+            download.whenComplete((localPath, error) -> {
+                if (localPath != null) {
+                    proxy.setFilePath(localPath);
+                }
+                imageExecutor.execute(load);
+            });
+        }
+    }
+
+    /**
+     * Replaces a placeholder with the loaded image, or with its original src
+     * if the image is not in the cache
+     */
+    private void swapImage(String id, String src) {
+        try {
+            JSObject image = (JSObject) webEngine.executeScript(
+                    "document.querySelector('img[data-proxy-id=\"" + id + "\"]')");
+            if (image == null) {
+                return;
+            }
+            if (src == null) {
+                src = (String) image.call("getAttribute", "data-original-src");
+            }
+            image.call("setAttribute", "src", src);
+            image.call("removeAttribute", "data-proxy-id");
+        } catch (Exception e) {
+            System.err.println("Failed to swap image " + id + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Called when page successfully loaded
      */
@@ -481,8 +857,11 @@ public class WebBrowserController implements Initializable {
                 currentWebPage = new WebPage();
             }
 
+            // Only the difference to the previous parse is applied
             currentWebPage.setRawHTML(htmlContent);
             currentWebPage.parseHTML();
+            System.out.println("Page resources updated: +" + currentWebPage.getLastAdded()
+                    + " -" + currentWebPage.getLastRemoved());
 
         } catch (Exception e) {
             System.err.println("Error in onPageLoaded: " + e.getMessage());
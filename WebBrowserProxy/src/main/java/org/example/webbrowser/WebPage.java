@@ -1,38 +1,56 @@
 package org.example.webbrowser;
 
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Page model: the main HTML and the resources it references.
+ *
+ * Resources are found with the single-pass HTMLResourceRewriter scan and
+ * indexed by resolved URL, so every resource appears once.
+ * Parsing again (e.g. the engine's DOM after the page has loaded) only
+ * applies the difference: resources that are still referenced keep their
+ * objects (and loaded content), new ones are added and missing ones dropped.
+ */
 public class WebPage {
-    private List<HTMLFile> htmlResources;
-    private List<CSSFile> cssResources;
-    private List<JSFile> jsResources;
-    private List<IImage> imageResources;
+    private Map<String, CSSFile> cssResources;
+    private Map<String, JSFile> jsResources;
+    private Map<String, IImage> imageResources;
+    private HTMLFile mainHTML;
     private String rawHTML;
+    private String parsedHTML;
+    private URI baseUri;
+    private int lastAdded;
+    private int lastRemoved;
 
     public WebPage() {
-        this.htmlResources = new ArrayList<>();
-        this.cssResources = new ArrayList<>();
-        this.jsResources = new ArrayList<>();
-        this.imageResources = new ArrayList<>();
+        this.cssResources = new LinkedHashMap<>();
+        this.jsResources = new LinkedHashMap<>();
+        this.imageResources = new LinkedHashMap<>();
     }
 
     public List<HTMLFile> getHtmlResources() {
+        List<HTMLFile> htmlResources = new ArrayList<>();
+        if (mainHTML != null) {
+            htmlResources.add(mainHTML);
+        }
         return htmlResources;
     }
 
     public List<CSSFile> getCssResources() {
-        return cssResources;
+        return new ArrayList<>(cssResources.values());
     }
 
     public List<JSFile> getJsResources() {
-        return jsResources;
+        return new ArrayList<>(jsResources.values());
     }
 
     public List<IImage> getImageResources() {
-        return imageResources;
+        return new ArrayList<>(imageResources.values());
     }
 
     public void setRawHTML(String rawHTML) {
@@ -43,50 +61,123 @@ public class WebPage {
         return rawHTML;
     }
 
+    /**
+     * Sets the page URL that relative resource paths are resolved against
+     */
+    public void setBaseUrl(String baseUrl) {
+        try {
+            this.baseUri = baseUrl == null ? null : new URI(baseUrl);
+        } catch (Exception e) {
+            this.baseUri = null;
+        }
+    }
+
+    /**
+     * @return Number of resources added by the last parse
+     */
+    public int getLastAdded() {
+        return lastAdded;
+    }
+
+    /**
+     * @return Number of resources removed by the last parse
+     */
+    public int getLastRemoved() {
+        return lastRemoved;
+    }
+
     public void parseHTML() {
         if (rawHTML == null || rawHTML.isEmpty()) {
             return;
         }
 
-        Pattern cssPattern = Pattern.compile("<link[^>]*href=[\"']([^\"']*\\.css)[\"'][^>]*>");
-        Matcher cssMatcher = cssPattern.matcher(rawHTML);
-        while (cssMatcher.find()) {
-            String cssPath = cssMatcher.group(1);
-            CSSFile cssFile = new CSSFile(extractFileName(cssPath), cssPath);
-            cssResources.add(cssFile);
+        lastAdded = 0;
+        lastRemoved = 0;
+        // Same document as last time, nothing changed
+        if (rawHTML.equals(parsedHTML)) {
+            return;
+        }
+
+        // One scan finds the references of every resource type
+        Map<String, CSSFile> css = new LinkedHashMap<>();
+        Map<String, JSFile> js = new LinkedHashMap<>();
+        Map<String, IImage> images = new LinkedHashMap<>();
+        for (HTMLResourceRewriter.ResourceReference reference : new HTMLResourceRewriter(rawHTML).getReferences()) {
+            switch (reference.getType()) {
+                case "link":
+                    add(css, cssResources, reference.getUrl(), CSSFile::new);
+                    break;
+                case "script":
+                    add(js, jsResources, reference.getUrl(), JSFile::new);
+                    break;
+                case "img":
+                    add(images, imageResources, reference.getUrl(), ImageFile::new);
+                    break;
+                default:
+                    break;
+            }
         }
 
-        Pattern jsPattern = Pattern.compile("<script[^>]*src=[\"']([^\"']*\\.js)[\"'][^>]*>");
-        Matcher jsMatcher = jsPattern.matcher(rawHTML);
-        while (jsMatcher.find()) {
-            String jsPath = jsMatcher.group(1);
-            JSFile jsFile = new JSFile(extractFileName(jsPath), jsPath);
-            jsResources.add(jsFile);
+        lastRemoved = countRemoved(cssResources, css) + countRemoved(jsResources, js)
+                + countRemoved(imageResources, images);
+        cssResources = css;
+        jsResources = js;
+        imageResources = images;
+
+        mainHTML = new HTMLFile("index.html", "index.html", rawHTML);
+        parsedHTML = rawHTML;
+    }
+
+    /**
+     * Adds a resource to the new index, reusing its object from the previous one
+     */
+    private <T> void add(Map<String, T> current, Map<String, T> previous, String path,
+                         BiFunction<String, String, T> factory) {
+        String key = resolve(path);
+        if (current.containsKey(key)) {
+            return;
         }
 
-        Pattern imgPattern = Pattern.compile("<img[^>]*src=[\"']([^\"']*)[\"'][^>]*>");
-        Matcher imgMatcher = imgPattern.matcher(rawHTML);
-        while (imgMatcher.find()) {
-            String imgPath = imgMatcher.group(1);
-            ImageFile imageFile = new ImageFile(extractFileName(imgPath), imgPath);
-            imageResources.add(imageFile);
+        T resource = previous.get(key);
+        if (resource == null) {
+            resource = factory.apply(extractFileName(path), path);
+            lastAdded++;
         }
+        current.put(key, resource);
+    }
 
-        HTMLFile mainHTML = new HTMLFile("index.html", "index.html", rawHTML);
-        htmlResources.add(mainHTML);
+    private static int countRemoved(Map<String, ?> previous, Map<String, ?> current) {
+        int removed = 0;
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private String resolve(String path) {
+        if (baseUri == null) {
+            return path;
+        }
+        try {
+            return baseUri.resolve(path.trim()).toString();
+        } catch (IllegalArgumentException e) {
+            return path;
+        }
     }
 
 
     public void loadResources() {
-        for (CSSFile css : cssResources) {
+        for (CSSFile css : cssResources.values()) {
             css.loadCSS();
         }
 
-        for (JSFile js : jsResources) {
+        for (JSFile js : jsResources.values()) {
             js.loadJS();
         }
 
-        for (IImage img : imageResources) {
+        for (IImage img : imageResources.values()) {
             img.loadImage();
         }
     }
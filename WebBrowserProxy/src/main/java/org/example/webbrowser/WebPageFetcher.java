@@ -2,25 +2,71 @@ package org.example.webbrowser;
 
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Web page fetcher that downloads HTML and all its resources (CSS, JS, images)
  */
 public class WebPageFetcher {
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 8;
+    private static final int DEFAULT_MAX_DOWNLOADS_PER_HOST = 4;
+    private static final int DEFAULT_DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_MAX_RESOURCE_SIZE = 50L * 1024 * 1024;
+    private static final long PRECONNECT_WAIT_MILLIS = 3000;
+
     private String baseUrl;
     private String outputDir;
     private Set<String> downloadedResources;
     private String indexHtmlPath;
+    private String savedHtml;
     private String protocol;
     private String host;
+    private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+    private int maxDownloadsPerHost = DEFAULT_MAX_DOWNLOADS_PER_HOST;
+    private int downloadBufferSize = DEFAULT_DOWNLOAD_BUFFER_SIZE;
+    private long maxResourceSize = DEFAULT_MAX_RESOURCE_SIZE;
+    private CacheManager cacheManager;
+    private ContentStore contentStore;
+    private ContentStore.Lease lease;
+    private RedirectResolver redirectResolver;
+    private String pageName;
+    private Set<String> pageBlobs;
+    private final Map<String, CompletableFuture<Void>> warmUps = new ConcurrentHashMap<>();
+    // Images left to download after the page was written, by URL
+    private final Map<String, CompletableFuture<String>> backgroundImages = new ConcurrentHashMap<>();
+    private CompletableFuture<Void> background = CompletableFuture.completedFuture(null);
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private AtomicLong budgetUsed;
+    private long byteBudget;
+    private volatile ResourceDownloadPool pool;
+    private volatile boolean overBudget;
+    private final AtomicLong bytesDecoded = new AtomicLong();
 
     public WebPageFetcher(String url, String outputDir) {
         this.baseUrl = url;
         this.outputDir = outputDir;
-        this.downloadedResources = new HashSet<>();
+        this.downloadedResources = ConcurrentHashMap.newKeySet();
+
+        // Index and blobs are shared by all page directories under the same cache root
+        Path pageDir = Paths.get(outputDir).toAbsolutePath().normalize();
+        this.cacheManager = CacheManager.forRoot(pageDir.getParent());
+        this.contentStore = cacheManager.getContentStore();
+        this.lease = contentStore.openLease();
+        this.redirectResolver = RedirectResolver.forRoot(pageDir.getParent());
+        this.pageName = pageDir.getFileName().toString();
+        this.pageBlobs = ConcurrentHashMap.newKeySet();
 
         try {
             URL urlObj = new URL(url);
@@ -36,278 +82,658 @@ public class WebPageFetcher {
      * Fetches page and all resources, returns path to index.html
      */
     public String fetchAndSave() throws IOException {
+        // Blobs stay pinned against eviction until the page referencing them is recorded,
+        // including the images that finish in the background
+        try {
+            return fetchAndSavePage();
+        } finally {
+            background.whenComplete((done, error) -> lease.close());
+        }
+    }
+
+    /**
+     * @return Future completed once the images left to download after the page
+     *         was written are in and the page is recorded with them
+     */
+    public CompletableFuture<Void> getBackgroundDownloads() {
+        return background;
+    }
+
+    /**
+     * @return Downloads of the images the page was written without, keyed by
+     *         the absolute URL the page refers to them by; each completes
+     *         with the cache:// URL of the image
+     */
+    public Map<String, CompletableFuture<String>> getBackgroundImages() {
+        return Collections.unmodifiableMap(backgroundImages);
+    }
+
+    private String fetchAndSavePage() throws IOException {
         // Create output directory
         Files.createDirectories(Paths.get(outputDir));
 
         // Check if page is already cached
         Path cachedHtml = Paths.get(outputDir, "index.html");
-        if (Files.exists(cachedHtml)) {
-            System.out.println("Loading from cache: " + outputDir);
+        Path pageMetadataPath = CacheMetadata.metadataPath(cachedHtml);
+        CacheMetadata pageMetadata = null;
+        if (cacheManager.lookup(pageName) && Files.exists(cachedHtml)) {
+            pageMetadata = CacheMetadata.load(pageMetadataPath);
+
+            // Pages cached without metadata cannot be revalidated and are served as is
+            if (pageMetadata == null || pageMetadata.isFresh()) {
+                System.out.println("Loading from cache: " + outputDir);
+                indexHtmlPath = cachedHtml.toAbsolutePath().toString();
+                return indexHtmlPath;
+            }
+
+            System.out.println("Revalidating cached page: " + baseUrl);
+        }
+
+        if (pageMetadata == null) {
+            pageMetadata = new CacheMetadata(baseUrl);
+            System.out.println("Fetching page: " + baseUrl);
+        }
+
+        // Fetch main HTML (conditional if the page is cached)
+        HtmlCharset.Document document = fetchResource(baseUrl, pageMetadata);
+
+        if (document == null) {
+            pageMetadata.save(pageMetadataPath);
+            System.out.println("Not modified, loading from cache: " + outputDir);
             indexHtmlPath = cachedHtml.toAbsolutePath().toString();
             return indexHtmlPath;
         }
 
-        System.out.println("Fetching page: " + baseUrl);
+        String html = document.getText();
+        if (html.trim().isEmpty()) {
+            throw new IOException("Failed to fetch HTML content");
+        }
 
-        // Fetch main HTML
-        String html = fetchResource(baseUrl);
+        System.out.println("HTML fetched, length: " + html.length() + " (" + document.getCharset() + ")");
 
-        if (html == null || html.trim().isEmpty()) {
-            throw new IOException("Failed to fetch HTML content");
+        // Discover every resource in a single scan, then download them concurrently
+        HTMLResourceRewriter rewriter = new HTMLResourceRewriter(html);
+        Map<String, HTMLResourceRewriter.ResourceReference> discovered = discoverResources(rewriter);
+        System.out.println("Resources discovered: " + discovered.size());
+        warmUpHosts(discovered, rewriter);
+        CompletableFuture<Void> images = downloadAll(discovered);
+        if (overBudget) {
+            throw new IOException("Download budget spent: " + baseUrl);
         }
 
-        System.out.println("HTML fetched, length: " + html.length());
+        // Rewrite HTML once the page can render, adding a base tag
+        // for proper relative URL resolution; the result is kept for the caller.
+        boolean imagesPending = !images.isDone();
+        savedHtml = writePage(cachedHtml, document, rewriter);
+        pageMetadata.save(pageMetadataPath);
+        cacheManager.recordPage(pageName, pageBlobs);
 
-        // Download resources in order of importance
+        indexHtmlPath = cachedHtml.toAbsolutePath().toString();
 
-        // 1. CSS files (multiple patterns)
-        html = downloadAndReplaceResources(html,
-                "<link[^>]*href=[\"']([^\"']+\\.css[^\"']*)[\"'][^>]*>",
-                "css", "link");
-        html = downloadAndReplaceResources(html,
-                "@import\\s+url\\([\"']?([^\"')]+\\.css[^\"')]*)[\"']?\\)",
-                "css", "import");
+        if (imagesPending) {
+            System.out.println("Images finishing in the background: " + backgroundImages.size());
+            // The file on disk gets the local copies once they are in
+            background = images.thenRun(() -> {
+                try {
+                    Path tmp = cachedHtml.resolveSibling(cachedHtml.getFileName() + ".tmp");
+                    writePage(tmp, document, rewriter);
+                    Files.move(tmp, cachedHtml, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    System.err.println("Failed to update page with background images: " + e.getMessage());
+                }
+                cacheManager.recordPage(pageName, pageBlobs);
+            });
+        }
 
-        // 2. JavaScript files (multiple patterns)
-        html = downloadAndReplaceResources(html,
-                "<script[^>]*src=[\"']([^\"']+\\.js[^\"']*)[\"'][^>]*>",
-                "js", "script");
+        System.out.println("\n=== Download Summary ===");
+        System.out.println("Total resources downloaded: " + downloadedResources.size());
+        System.out.println("Transferred: " + bytesDownloaded.get() + " bytes on the wire, "
+                + bytesDecoded.get() + " bytes decoded");
+        System.out.println("DNS cache: " + DnsCache.getInstance().getStats());
+        System.out.println("Index.html saved at: " + indexHtmlPath);
 
-        // 3. Images (multiple formats and patterns)
-        html = downloadAndReplaceResources(html,
-                "<img[^>]*src=[\"']([^\"']+\\.(jpg|jpeg|png|gif|svg|webp|ico|bmp)[^\"']*)[\"'][^>]*>",
-                "images", "img");
+        return indexHtmlPath;
+    }
 
-        // 4. Background images in style attributes
-        html = downloadAndReplaceResources(html,
-                "url\\([\"']?([^\"')]+\\.(jpg|jpeg|png|gif|svg|webp)[^\"')]*)[\"']?\\)",
-                "images", "bg");
+    /**
+     * Writes the page with every downloaded resource replaced by its local path
+     *
+     * @return Text of the written page
+     */
+    private String writePage(Path target, HtmlCharset.Document document, HTMLResourceRewriter rewriter) throws IOException {
+        String baseTag = "<base href=\"" + protocol + "://" + host + "/\">";
+        if (document.isSelfDescribing() && rewriter.isUnchanged(this::getLocalPathForReference, baseTag)) {
+            // Nothing to rewrite, keep the original bytes
+            Files.write(target, document.getBytes());
+            return document.getText();
+        }
 
-        // 5. Link rel icons (favicon, apple-touch-icon, etc)
-        html = downloadAndReplaceResources(html,
-                "<link[^>]*rel=[\"'](?:icon|shortcut icon|apple-touch-icon)[\"'][^>]*href=[\"']([^\"']+)[\"'][^>]*>",
-                "images", "icon");
+        // One pass writes the file and keeps the text for the caller. The file is
+        // UTF-8, whatever the page declared, so no character is lost; it must say
+        // so itself, as file:// loads have no headers
+        StringBuilder text = new StringBuilder(document.getText().length() + 1024);
+        try (Writer file = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(target), StandardCharsets.UTF_8))) {
+            rewriter.write(teeWriter(file, text), this::getLocalPathForReference, baseTag, StandardCharsets.UTF_8);
+        }
+        return text.toString();
+    }
 
-        // 6. Fonts
-        html = downloadAndReplaceResources(html,
-                "url\\([\"']?([^\"')]+\\.(woff2?|ttf|eot|otf)[^\"')]*)[\"']?\\)",
-                "fonts", "font");
+    /**
+     * @return Writer that sends everything to a writer and a buffer
+     */
+    private static Writer teeWriter(Writer out, StringBuilder buffer) {
+        return new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                out.write(chars, offset, length);
+                buffer.append(chars, offset, length);
+            }
 
-        // Add base tag to HTML for proper relative URL resolution
-        html = addBaseTag(html);
+            @Override
+            public void write(String string, int offset, int length) throws IOException {
+                out.write(string, offset, length);
+                buffer.append(string, offset, offset + length);
+            }
 
-        // Save modified HTML
-        Files.write(cachedHtml, html.getBytes());
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
 
-        indexHtmlPath = cachedHtml.toAbsolutePath().toString();
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
 
-        System.out.println("\n=== Download Summary ===");
-        System.out.println("Total resources downloaded: " + downloadedResources.size());
-        System.out.println("Index.html saved at: " + indexHtmlPath);
+    /**
+     * @return HTML written by the last fetchAndSave, or null if the page came from the disk cache
+     */
+    public String getHtml() {
+        return savedHtml;
+    }
 
-        return indexHtmlPath;
+    /**
+     * @return Response body bytes received from the network by this fetcher (compressed)
+     */
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
     }
 
     /**
-     * Adds base tag to HTML for proper relative URL resolution
+     * @return Response body bytes after decompression
      */
-    private String addBaseTag(String html) {
-        // Check if base tag already exists
-        if (html.contains("<base")) {
-            return html;
-        }
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
 
-        // Add base tag after <head>
-        String baseTag = "<base href=\"" + protocol + "://" + host + "/\">";
-        html = html.replaceFirst("(<head[^>]*>)", "$1\n" + baseTag);
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
 
-        return html;
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
     }
 
-    private String downloadAndReplaceResources(String html, String regex, String folder, String type) {
-        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher matcher = pattern.matcher(html);
-        StringBuffer result = new StringBuffer();
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
 
-        int count = 0;
+    public int getMaxDownloadsPerHost() {
+        return maxDownloadsPerHost;
+    }
 
-        while (matcher.find()) {
-            String resourceUrl = matcher.group(1);
+    public void setMaxDownloadsPerHost(int maxDownloadsPerHost) {
+        this.maxDownloadsPerHost = maxDownloadsPerHost;
+    }
 
-            // Skip data URLs, empty URLs, blob URLs, and already local paths
-            if (resourceUrl.startsWith("data:") ||
-                    resourceUrl.startsWith("blob:") ||
-                    resourceUrl.trim().isEmpty() ||
-                    resourceUrl.startsWith("file://") ||
-                    resourceUrl.startsWith("#")) {
-                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(0)));
+    public int getDownloadBufferSize() {
+        return downloadBufferSize;
+    }
+
+    public void setDownloadBufferSize(int downloadBufferSize) {
+        this.downloadBufferSize = downloadBufferSize;
+    }
+
+    public long getMaxResourceSize() {
+        return maxResourceSize;
+    }
+
+    /**
+     * Sets the per-resource size cap; larger downloads are aborted
+     */
+    public void setMaxResourceSize(long maxResourceSize) {
+        this.maxResourceSize = maxResourceSize;
+    }
+
+    /**
+     * Limits the bytes downloaded by this fetcher and any others sharing the
+     * counter. Once the counter crosses the budget, the page's remaining
+     * downloads are stopped and fetchAndSave fails without recording the page.
+     *
+     * @param used   Wire bytes downloaded so far, updated as resources arrive
+     * @param budget Limit for the counter
+     */
+    public void setByteBudget(AtomicLong used, long budget) {
+        this.budgetUsed = used;
+        this.byteBudget = budget;
+    }
+
+    /**
+     * Collects resource URLs from the scanned references, keyed by resolved URL.
+     * A URL referenced more than once keeps its highest-priority reference.
+     */
+    private Map<String, HTMLResourceRewriter.ResourceReference> discoverResources(HTMLResourceRewriter rewriter) {
+        Map<String, HTMLResourceRewriter.ResourceReference> discovered = new LinkedHashMap<>();
+
+        for (HTMLResourceRewriter.ResourceReference reference : rewriter.getReferences()) {
+            if (!reference.isDownloadable() || isSkippedUrl(reference.getUrl())) {
                 continue;
             }
+            discovered.merge(resolveUrl(baseUrl, reference.getUrl()), reference,
+                    (first, other) -> other.getPriority().compareTo(first.getPriority()) < 0 ? other : first);
+        }
 
-            // Resolve full URL
-            String fullUrl = resolveUrl(baseUrl, resourceUrl);
+        return discovered;
+    }
 
-            // Skip if already downloaded
-            if (downloadedResources.contains(fullUrl)) {
-                // Find local path for this URL
-                String localPath = getLocalPathForUrl(fullUrl, folder);
-                if (localPath != null) {
-                    matcher.appendReplacement(result,
-                            Matcher.quoteReplacement(matcher.group(0).replace(resourceUrl, localPath)));
-                } else {
-                    matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(0)));
-                }
+    /**
+     * Resolves the hosts the page's resources will be requested from in
+     * parallel and opens connections to them, so the downloads do not set
+     * up one host after another. Hosts from preconnect hints are connected
+     * to, hosts from dns-prefetch hints are only resolved. Resources that are
+     * fresh in the cache need no connection.
+     */
+    private void warmUpHosts(Map<String, HTMLResourceRewriter.ResourceReference> discovered,
+                             HTMLResourceRewriter rewriter) {
+        Set<String> preconnect = new LinkedHashSet<>();
+        Set<String> resolveOnly = new LinkedHashSet<>();
+
+        for (String hint : rewriter.getPreconnectHints()) {
+            preconnect.add(getOrigin(resolveUrl(baseUrl, hint)));
+        }
+        for (String url : discovered.keySet()) {
+            if (needsNetwork(url)) {
+                preconnect.add(getOrigin(url));
+            }
+        }
+        for (String hint : rewriter.getDnsPrefetchHints()) {
+            resolveOnly.add(getHostFromUrl(resolveUrl(baseUrl, hint)));
+        }
+
+        // The page's own connection is already open
+        preconnect.remove(getOrigin(baseUrl));
+        preconnect.remove(null);
+        resolveOnly.remove("");
+
+        DnsCache dnsCache = DnsCache.getInstance();
+        for (String origin : preconnect) {
+            String host = getHostFromUrl(origin);
+            resolveOnly.remove(host);
+            // A recent failed lookup only skips the preconnect; the request
+            // still resolves the host itself
+            if (dnsCache.isUnresolvable(host)) {
                 continue;
             }
+            warmUps.put(origin, dnsCache.resolve(host)
+                    .thenCompose(addresses -> HttpClientEngine.getInstance().preconnect(origin)));
+        }
+        dnsCache.prefetch(resolveOnly);
 
-            try {
-                String localPath = downloadResource(fullUrl, folder);
-                downloadedResources.add(fullUrl);
-                count++;
+        if (!preconnect.isEmpty() || !resolveOnly.isEmpty()) {
+            System.out.println("Preconnecting to " + preconnect.size() + " origins, resolving "
+                    + resolveOnly.size() + " more hosts");
+        }
+    }
+
+    /**
+     * @return true if the resource is not in the cache or has to be revalidated
+     */
+    private boolean needsNetwork(String url) {
+        try {
+            CacheMetadata metadata = CacheMetadata.load(getResourceMetadataPath(url));
+            return metadata == null || !metadata.isFresh() || !contentStore.contains(metadata.getBlob());
+        } catch (IOException e) {
+            return true;
+        }
+    }
 
-                // Replace in HTML
-                matcher.appendReplacement(result,
-                        Matcher.quoteReplacement(matcher.group(0).replace(resourceUrl, localPath)));
+    /**
+     * Waits a short time for the connection being opened to the URL's origin,
+     * so the request reuses it instead of opening another one
+     */
+    private void awaitWarmUp(String url) throws IOException {
+        CompletableFuture<Void> warmUp = warmUps.get(getOrigin(url));
+        if (warmUp == null) {
+            return;
+        }
+        try {
+            warmUp.get(PRECONNECT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download cancelled: " + url);
+        } catch (ExecutionException | TimeoutException e) {
+            // The request sets up its own connection
+        }
+    }
 
-                System.out.println("[" + type + "] Downloaded (" + count + "): " + getFilenameFromUrl(fullUrl));
+    /**
+     * Downloads all discovered resources on a bounded worker pool,
+     * render-blocking resources first. Stylesheets are crawled for their
+     * own dependencies and replaced by self-contained copies.
+     *
+     * Returns once everything but the images below HIGH priority is in;
+     * those keep downloading on the pool, and their placeholders in the
+     * written page wait for them (see getBackgroundImages).
+     *
+     * @return Future completed once the remaining images are done
+     */
+    private CompletableFuture<Void> downloadAll(Map<String, HTMLResourceRewriter.ResourceReference> discovered) throws IOException {
+        ResourceDownloadPool pool = new ResourceDownloadPool(maxConcurrentDownloads, maxDownloadsPerHost);
+        this.pool = pool;
+        Map<String, CompletableFuture<String>> downloads = new ConcurrentHashMap<>();
+        AtomicInteger count = new AtomicInteger();
+        StylesheetCrawler crawler = new StylesheetCrawler(lease,
+                (url, priority) -> download(pool, downloads, url, priority, "css", count), pageBlobs);
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        List<CompletableFuture<?>> renderBlocking = new ArrayList<>();
+        List<CompletableFuture<?>> deferred = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+
+        // Submit in priority order, so the first free workers take the critical resources
+        List<Map.Entry<String, HTMLResourceRewriter.ResourceReference>> entries = new ArrayList<>(discovered.entrySet());
+        entries.sort(Comparator.comparing(entry -> entry.getValue().getPriority()));
 
-            } catch (IOException e) {
-                System.err.println("[" + type + "] Failed: " + fullUrl + " - " + e.getMessage());
-                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(0)));
+        try {
+            for (Map.Entry<String, HTMLResourceRewriter.ResourceReference> entry : entries) {
+                String fullUrl = entry.getKey();
+                HTMLResourceRewriter.ResourceReference reference = entry.getValue();
+
+                CompletableFuture<?> future;
+                if (reference.getFolder().equals("css")) {
+                    future = crawler.crawl(fullUrl, reference.getPriority()).handle((localPath, error) -> {
+                        if (error == null) {
+                            urlToLocalPathMap.put(fullUrl, localPath);
+                        }
+                        return null;
+                    });
+                } else {
+                    CompletableFuture<String> download = download(pool, downloads, fullUrl,
+                            reference.getPriority(), reference.getType(), count);
+                    future = download.handle((localPath, error) -> null);
+
+                    // Images the page can be shown without are not waited for
+                    if (reference.getType().equals("img") && reference.getPriority().compareTo(ResourcePriority.HIGH) > 0) {
+                        backgroundImages.put(fullUrl, download);
+                        deferred.add(future);
+                        continue;
+                    }
+                }
+
+                futures.add(future);
+                if (reference.getPriority().isRenderBlocking()) {
+                    renderBlocking.add(future);
+                }
             }
-        }
-        matcher.appendTail(result);
 
-        if (count > 0) {
-            System.out.println("[" + type + "] Total downloaded: " + count);
+            // The pool runs until the last download, background images included
+            List<CompletableFuture<?>> all = new ArrayList<>(futures);
+            all.addAll(deferred);
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).whenComplete((done, error) -> pool.shutdown());
+
+            CompletableFuture.allOf(renderBlocking.toArray(new CompletableFuture<?>[0])).get();
+            System.out.println("Render-blocking resources ready (" + renderBlocking.size() + ") in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+            return CompletableFuture.allOf(deferred.toArray(new CompletableFuture<?>[0]));
+        } catch (InterruptedException e) {
+            // Navigation was cancelled: stop all downloads of this page
+            pool.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Page fetch cancelled: " + baseUrl);
+        } catch (ExecutionException e) {
+            pool.cancel();
+            throw new IOException("Resource download failed", e.getCause());
         }
+    }
+
+    /**
+     * Schedules a resource download once per page
+     *
+     * @return Future completed with the cache:// URL of the resource
+     */
+    private CompletableFuture<String> download(ResourceDownloadPool pool, Map<String, CompletableFuture<String>> downloads,
+                                               String url, ResourcePriority priority, String type, AtomicInteger count) {
+        return downloads.computeIfAbsent(url, key -> pool.submit(getHostFromUrl(url), priority, () -> {
+            try {
+                String localPath = downloadResource(url);
+                downloadedResources.add(url);
+                System.out.println("[" + type + "] Downloaded (" + count.incrementAndGet()
+                        + "): " + getFilenameFromUrl(url));
+                return localPath;
+            } catch (IOException e) {
+                if (!pool.isCancelled()) {
+                    System.err.println("[" + type + "] Failed: " + url + " - " + e.getMessage());
+                }
+                throw e;
+            }
+        }));
+    }
 
-        return result.toString();
+    /**
+     * Local path for a reference, or null to keep its original URL
+     */
+    String getLocalPathForReference(HTMLResourceRewriter.ResourceReference reference) {
+        if (isSkippedUrl(reference.getUrl())) {
+            return null;
+        }
+        String url = resolveUrl(baseUrl, reference.getUrl());
+        String localPath = getLocalPathForUrl(url, reference.getFolder());
+        // Images still downloading keep their absolute URL, which their placeholders wait on
+        if (localPath == null && backgroundImages.containsKey(url)) {
+            return url;
+        }
+        return localPath;
     }
 
-    private Map<String, String> urlToLocalPathMap = new HashMap<>();
+    /**
+     * Skip data URLs, empty URLs, blob URLs, and already local paths
+     */
+    private boolean isSkippedUrl(String resourceUrl) {
+        return resourceUrl.startsWith("data:") ||
+                resourceUrl.startsWith("blob:") ||
+                resourceUrl.trim().isEmpty() ||
+                resourceUrl.startsWith("file://") ||
+                resourceUrl.startsWith("#");
+    }
 
-    private String downloadResource(String url, String folder) throws IOException {
-        byte[] data = fetchBinaryResource(url);
+    private Map<String, String> urlToLocalPathMap = new ConcurrentHashMap<>();
 
-        // Create folder if not exists
-        Path folderPath = Paths.get(outputDir, folder);
-        Files.createDirectories(folderPath);
+    /**
+     * Downloads (or revalidates) a resource into the content store
+     *
+     * @return cache:// URL of the stored blob
+     */
+    private String downloadResource(String url) throws IOException {
+        Path metadataPath = getResourceMetadataPath(url);
+        CacheMetadata metadata = CacheMetadata.load(metadataPath);
+        boolean cached = metadata != null && lease.acquire(metadata.getBlob());
 
-        // Generate filename
-        String filename = getFilenameFromUrl(url);
-        Path filePath = folderPath.resolve(filename);
+        if (!cached) {
+            metadata = new CacheMetadata(url);
+        }
 
-        // Handle duplicate filenames
-        int counter = 1;
-        while (Files.exists(filePath)) {
-            String nameWithoutExt = filename.substring(0, filename.lastIndexOf('.'));
-            String ext = filename.substring(filename.lastIndexOf('.'));
-            filename = nameWithoutExt + "_" + counter + ext;
-            filePath = folderPath.resolve(filename);
-            counter++;
+        if (cached && metadata.isFresh()) {
+            System.out.println("Fresh in cache: " + getFilenameFromUrl(url));
+        } else {
+            try {
+                if (!downloadToStore(url, metadata, cached)) {
+                    System.out.println("Not modified: " + getFilenameFromUrl(url));
+                }
+                metadata.save(metadataPath);
+            } catch (IOException e) {
+                if (!cached) {
+                    throw e;
+                }
+                // Revalidation failed, keep serving the stale copy
+                System.err.println("Revalidation failed, using cached copy: " + url + " - " + e.getMessage());
+            }
         }
 
-        // Save file
-        Files.write(filePath, data);
+        pageBlobs.add(metadata.getBlob());
 
-        String localPath = folder + "/" + filename;
+        // Absolute cache:// URL, not affected by the page's base tag
+        String localPath = CacheURLStreamHandler.toURL(contentStore.resolve(metadata.getBlob()));
         urlToLocalPathMap.put(url, localPath);
 
         return localPath;
     }
 
+    /**
+     * Per-URL metadata file inside the page directory
+     */
+    private Path getResourceMetadataPath(String url) throws IOException {
+        Path resourcesDir = Paths.get(outputDir, "resources");
+        Files.createDirectories(resourcesDir);
+        return resourcesDir.resolve(ContentStore.hash(url) + CacheMetadata.SUFFIX);
+    }
+
     private String getLocalPathForUrl(String url, String folder) {
         return urlToLocalPathMap.get(url);
     }
 
-    private String fetchResource(String url) throws IOException {
-        HttpURLConnection conn = null;
-        try {
-            conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-            conn.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
-            conn.setRequestProperty("Accept-Language", "en-US,en;q=0.5");
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setInstanceFollowRedirects(true);
-
-            int responseCode = conn.getResponseCode();
-
-            // Handle redirects manually if needed
-            if (responseCode == HttpURLConnection.HTTP_MOVED_PERM ||
-                    responseCode == HttpURLConnection.HTTP_MOVED_TEMP ||
-                    responseCode == HttpURLConnection.HTTP_SEE_OTHER) {
-                String newUrl = conn.getHeaderField("Location");
-                if (newUrl != null) {
-                    System.out.println("Following redirect to: " + newUrl);
-                    return fetchResource(newUrl);
-                }
+    /**
+     * Fetches an HTML document, sending validators from the metadata if it has any
+     *
+     * @return Document bytes with their charset, or null if the server answered 304 Not Modified
+     */
+    private HtmlCharset.Document fetchResource(String url, CacheMetadata metadata) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
+        headers.put("Accept-Language", "en-US,en;q=0.5");
+        metadata.addValidators(headers);
+
+        HttpResponse<InputStream> response = redirectResolver.get(url, headers);
+
+        try (InputStream in = countBytes(response.body())) {
+            int responseCode = response.statusCode();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                metadata.update(response.headers(), true);
+                return null;
             }
 
             if (responseCode != 200) {
                 throw new IOException("HTTP response code: " + responseCode);
             }
 
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream(), "UTF-8"))) {
-                StringBuilder content = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    content.append(line).append("\n");
-                }
-                return content.toString();
-            }
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
+            metadata.update(response.headers(), false);
+
+            // Relative resource URLs resolve against the URL that finally answered
+            String finalUrl = response.uri().toString();
+            if (!finalUrl.equals(baseUrl)) {
+                baseUrl = finalUrl;
+                protocol = response.uri().getScheme();
+                host = response.uri().getHost();
             }
+
+            return HtmlCharset.read(in, response.headers().firstValue("Content-Type").orElse(null));
         }
     }
 
-    private byte[] fetchBinaryResource(String url) throws IOException {
-        HttpURLConnection conn = null;
-        try {
-            conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-            conn.setRequestProperty("Accept", "*/*");
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setInstanceFollowRedirects(true);
-
-            int responseCode = conn.getResponseCode();
-
-            // Handle redirects
-            if (responseCode == HttpURLConnection.HTTP_MOVED_PERM ||
-                    responseCode == HttpURLConnection.HTTP_MOVED_TEMP ||
-                    responseCode == HttpURLConnection.HTTP_SEE_OTHER) {
-                String newUrl = conn.getHeaderField("Location");
-                if (newUrl != null) {
-                    return fetchBinaryResource(newUrl);
-                }
+    /**
+     * Streams a resource into the content store through NIO channels,
+     * without buffering the whole body in memory
+     *
+     * @param conditional Send the validators from the metadata
+     * @return true if a new body was stored, false if the server answered 304 Not Modified
+     */
+    private boolean downloadToStore(String url, CacheMetadata metadata, boolean conditional) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "*/*");
+        if (conditional) {
+            metadata.addValidators(headers);
+        }
+
+        awaitWarmUp(url);
+        HttpResponse<InputStream> response = redirectResolver.get(url, headers);
+
+        try (InputStream in = countBytes(response.body())) {
+            int responseCode = response.statusCode();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                metadata.update(response.headers(), true);
+                return false;
             }
 
             if (responseCode != 200) {
                 throw new IOException("HTTP response code: " + responseCode);
             }
 
-            try (InputStream in = conn.getInputStream();
-                 ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                }
-                return out.toByteArray();
+            // Abort early when the server announces an oversized body
+            OptionalLong contentLength = response.headers().firstValueAsLong("Content-Length");
+            if (contentLength.isPresent() && contentLength.getAsLong() > maxResourceSize) {
+                throw new IOException("Resource too large: " + contentLength.getAsLong() + " bytes");
             }
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
+
+            // A resource may not take more than what is left of the budget
+            long maxSize = maxResourceSize;
+            if (budgetUsed != null) {
+                maxSize = Math.min(maxSize, Math.max(0, byteBudget - budgetUsed.get()));
+            }
+
+            String blob;
+            try (ReadableByteChannel source = Channels.newChannel(in)) {
+                blob = lease.store(source, getExtension(getFilenameFromUrl(metadata.getUrl())),
+                        downloadBufferSize, maxSize);
             }
+
+            metadata.setBlob(blob);
+            metadata.update(response.headers(), false);
+            return true;
         }
     }
 
-    private String resolveUrl(String baseUrl, String relativeUrl) {
+    /**
+     * Adds the wire and decoded byte counts of a response body to this fetcher once it is closed
+     */
+    private InputStream countBytes(InputStream body) {
+        return new FilterInputStream(body) {
+            private boolean counted;
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!counted && body instanceof ContentDecoders.DecodingInputStream decoding) {
+                    counted = true;
+                    bytesDownloaded.addAndGet(decoding.getWireBytes());
+                    bytesDecoded.addAndGet(decoding.getDecodedBytes());
+                    if (budgetUsed != null && budgetUsed.addAndGet(decoding.getWireBytes()) >= byteBudget) {
+                        stopOverBudget();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Stops the page's downloads once the shared budget is spent
+     */
+    private void stopOverBudget() {
+        if (overBudget) {
+            return;
+        }
+        overBudget = true;
+        ResourceDownloadPool current = pool;
+        if (current != null) {
+            System.out.println("Download budget spent, stopping: " + baseUrl);
+            current.cancel();
+        }
+    }
+
+    String resolveUrl(String baseUrl, String relativeUrl) {
         try {
             // Remove whitespace
             relativeUrl = relativeUrl.trim();
@@ -333,7 +759,36 @@ public class WebPageFetcher {
         }
     }
 
-    private String getFilenameFromUrl(String url) {
+    private String getHostFromUrl(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * @return scheme://host[:port] of a URL, or null if it has no host
+     */
+    private String getOrigin(String url) {
+        try {
+            URI uri = new URI(url);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return null;
+            }
+            String origin = uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase();
+            return uri.getPort() >= 0 ? origin + ":" + uri.getPort() : origin;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private String getExtension(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex >= 0 ? filename.substring(dotIndex) : ".bin";
+    }
+
+    String getFilenameFromUrl(String url) {
         try {
             // Remove query parameters and anchors
             String path = url.split("\\?")[0];
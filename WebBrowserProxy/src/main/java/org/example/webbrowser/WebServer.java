@@ -1,20 +1,37 @@
 package org.example.webbrowser;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * For now handles local server
+ * Local server: serves registered pages, files and directories.
+ *
+ * Every page or resource has its own entry in a RouteTable keyed by path,
+ * directories are prefix routes. processRequest answers in-process requests
+ * from the controller; start() additionally makes the same content
+ * available over HTTP/1.1 on the loopback interface (see NioHttpServer),
+ * e.g. as a local origin for testing the fetcher.
  */
 public class WebServer {
+    // Files up to this size are read into the heap, larger ones are sent from the file
+    private static final long MAX_HEAP_FILE_SIZE = 64 * 1024;
+
     private String host;
-    private List<String> resources;
     private List<WebPage> pages;
+    private RouteTable<Route> routes;
+    private Path documentRoot;
+    private NioHttpServer httpServer;
 
     public WebServer(String host) {
         this.host = host;
-        this.resources = new ArrayList<>();
         this.pages = new ArrayList<>();
+        this.routes = new RouteTable<>();
     }
 
     public String getHost() {
@@ -25,62 +42,308 @@ public class WebServer {
         this.host = host;
     }
 
-    public List<String> getResources() {
-        return resources;
+    public List<WebPage> getPages() {
+        return pages;
     }
 
-    public void addResource(String resource) {
-        this.resources.add(resource);
+    /**
+     * Serves a page at a path ("/index.html")
+     */
+    public void addPage(String path, WebPage page) {
+        this.pages.add(page);
+        routes.add(path, Route.page(page));
     }
 
-    public List<WebPage> getPages() {
-        return pages;
+    /**
+     * Serves a file at a path
+     */
+    public void addResource(String path, Path file) {
+        routes.add(path, Route.file(file.toAbsolutePath().normalize()));
     }
 
-    public void addPage(WebPage page) {
-        this.pages.add(page);
+    /**
+     * Serves the files of a directory below a path prefix ("/static" or "/static/*")
+     */
+    public void addDirectory(String prefix, Path directory) {
+        String pattern = prefix.endsWith("/*") ? prefix : (prefix.endsWith("/") ? prefix + "*" : prefix + "/*");
+        routes.add(pattern, Route.directory(directory.toAbsolutePath().normalize()));
     }
 
+    /**
+     * @return Number of routes
+     */
+    public int getRouteCount() {
+        return routes.size();
+    }
 
-    public HTTPResponse processRequest(HTTPRequest request) {
-        HTTPResponse response = new HTTPResponse();
+    public Path getDocumentRoot() {
+        return documentRoot;
+    }
+
+    /**
+     * Sets a directory whose files are served when no other route matches
+     */
+    public void setDocumentRoot(Path documentRoot) {
+        this.documentRoot = documentRoot.toAbsolutePath().normalize();
+        addDirectory("/", this.documentRoot);
+    }
+
+    /**
+     * Starts serving over HTTP on 127.0.0.1
+     *
+     * @param port Port to listen on, 0 for any free port
+     * @return Port the server listens on
+     */
+    public synchronized int start(int port) throws IOException {
+        if (httpServer == null) {
+            httpServer = new NioHttpServer(this);
+        }
+        httpServer.start(port);
+        return httpServer.getPort();
+    }
+
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop();
+        }
+    }
 
-        String requestedUrl = request.getUrl();
+    /**
+     * @return Port of the HTTP listener, or -1 if it is not running
+     */
+    public synchronized int getPort() {
+        return httpServer == null ? -1 : httpServer.getPort();
+    }
 
-        boolean resourceFound = false;
-        WebPage foundPage = null;
+    /**
+     * Builds the response to an HTTP request received by the listener
+     *
+     * @param method Request method
+     * @param target Request target (path and query)
+     */
+    public Response respond(String method, String target) {
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return new Response(405, "text/plain", ByteBuffer.wrap("Method Not Allowed".getBytes(StandardCharsets.UTF_8)));
+        }
 
-        for (String resource : resources) {
-            if (requestedUrl.contains(resource)) {
-                resourceFound = true;
-                break;
+        String path = getPath(target);
+        RouteTable.Match<Route> match = routes.lookup(path);
+        if (match != null && match.getValue().page == null) {
+            try {
+                Response fileResponse = respondWithFile(match);
+                if (fileResponse != null) {
+                    return fileResponse;
+                }
+            } catch (IOException e) {
+                return new Response(500, "text/plain", ByteBuffer.wrap(e.toString().getBytes(StandardCharsets.UTF_8)));
             }
         }
 
-        // Searching for a needed page
-        if (resourceFound && !pages.isEmpty()) {
-            foundPage = pages.get(0);
+        HTTPResponse pageResponse = processRequest(new HTTPRequest("http://" + host + path, method));
+        String contentType = pageResponse.getHeaders().getOrDefault("Content-Type", "text/html");
+        if (contentType.startsWith("text/") && !contentType.contains("charset")) {
+            contentType += "; charset=utf-8";
+        }
+        byte[] body = pageResponse.getBodyBytes() != null
+                ? pageResponse.getBodyBytes()
+                : pageResponse.getBody().getBytes(StandardCharsets.UTF_8);
+        return new Response(pageResponse.getStatusCode(), contentType, ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Files are not memory-mapped: a mapping keeps the file open until it is
+     * garbage collected, and on Windows a mapped file cannot be deleted or replaced
+     *
+     * @return Response with the file of a file or directory route, or null if there is none
+     */
+    private Response respondWithFile(RouteTable.Match<Route> match) throws IOException {
+        Path file = resolveFile(match);
+        if (file == null) {
+            return null;
+        }
+
+        String contentType = CacheURLStreamHandler.getContentType(file.getFileName().toString());
+        long size = Files.size(file);
+        if (size <= MAX_HEAP_FILE_SIZE) {
+            return new Response(200, contentType, ByteBuffer.wrap(Files.readAllBytes(file)));
+        }
+        // The listener transfers the file to the socket (see NioHttpServer)
+        return new Response(200, contentType, file, size);
+    }
+
+    /**
+     * @return File a file or directory route points at, or null if it does not exist
+     */
+    private Path resolveFile(RouteTable.Match<Route> match) {
+        Route route = match.getValue();
+        Path file;
+        try {
+            file = route.file ? route.path : route.path.resolve(match.getRemainder()).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        // Paths escaping the directory are not served
+        if (!file.startsWith(route.path) || !Files.isRegularFile(file)) {
+            return null;
         }
+        return file;
+    }
+
+    /**
+     * @return Request path of a URL or request target; directories map to their index.html
+     */
+    private static String getPath(String url) {
+        String path = url;
+        int schemeEnd = path.indexOf("://");
+        if (schemeEnd >= 0) {
+            path = path.substring(schemeEnd + 3);
+        }
+        if (!path.startsWith("/")) {
+            // Drop the host ("test.com/404" -> "/404")
+            int slash = path.indexOf('/');
+            path = slash >= 0 ? path.substring(slash) : "/";
+        }
+
+        int end = path.length();
+        for (char c : new char[]{'?', '#'}) {
+            int index = path.indexOf(c);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        path = path.substring(0, end);
+        return path.endsWith("/") ? path + "index.html" : path;
+    }
+
+    public HTTPResponse processRequest(HTTPRequest request) {
+        HTTPResponse response = new HTTPResponse();
+
+        // Constant-time lookup of the requested path
+        RouteTable.Match<Route> match = routes.lookup(getPath(request.getUrl()));
+        Path file = match != null && match.getValue().page == null ? resolveFile(match) : null;
 
         // Answer forming
-        if (foundPage != null) {
+        if (match != null && match.getValue().page != null) {
             response.setStatusCode(200);
             response.getHeaders().put("Content-Type", "text/html");
             response.getHeaders().put("Server", host);
 
             StringBuilder htmlContent = new StringBuilder();
-            for (HTMLFile html : foundPage.getHtmlResources()) {
+            for (HTMLFile html : match.getValue().page.getHtmlResources()) {
                 htmlContent.append(html.getContent());
             }
             response.setBody(htmlContent.toString());
+        } else if (file != null) {
+            try {
+                // Files are read as bytes, images and fonts are not text
+                byte[] bytes = Files.readAllBytes(file);
+                String contentType = CacheURLStreamHandler.getContentType(file.getFileName().toString());
+                response.setBodyBytes(bytes);
+                if (isText(contentType)) {
+                    response.setBody(HtmlCharset.of(bytes, null).getText());
+                }
+                response.setStatusCode(200);
+                response.getHeaders().put("Content-Type", contentType);
+                response.getHeaders().put("Server", host);
+            } catch (IOException e) {
+                response.setStatusCode(500);
+                response.setBody("Error: " + e.getMessage());
+            }
         } else {
             response.setStatusCode(404);
             response.getHeaders().put("Content-Type", "text/html");
 
-            HTTPHandlerChain chain = new HTTPHandlerChain();
-            chain.process(response);
+            HTTPHandlerChain.getShared().process(response);
         }
 
         return response;
     }
+
+    private static boolean isText(String contentType) {
+        return contentType.startsWith("text/") || contentType.equals("application/javascript")
+                || contentType.equals("image/svg+xml");
+    }
+
+    /**
+     * Route target: a page, a single file or a directory
+     */
+    private static class Route {
+        private final WebPage page;
+        private final Path path;
+        private final boolean file;
+
+        private Route(WebPage page, Path path, boolean file) {
+            this.page = page;
+            this.path = path;
+            this.file = file;
+        }
+
+        private static Route page(WebPage page) {
+            return new Route(page, null, false);
+        }
+
+        private static Route file(Path path) {
+            return new Route(null, path, true);
+        }
+
+        private static Route directory(Path path) {
+            return new Route(null, path, false);
+        }
+    }
+
+    /**
+     * Response of the HTTP listener: status, content type and body bytes
+     */
+    public static class Response {
+        private final int statusCode;
+        private final String contentType;
+        private final ByteBuffer body;
+        private final Path file;
+        private final long contentLength;
+
+        public Response(int statusCode, String contentType, ByteBuffer body) {
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.body = body;
+            this.file = null;
+            this.contentLength = body.remaining();
+        }
+
+        /**
+         * Response whose body is sent from a file
+         */
+        public Response(int statusCode, String contentType, Path file, long contentLength) {
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.body = null;
+            this.file = file;
+            this.contentLength = contentLength;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return Body bytes, or null if the body is sent from a file
+         */
+        public ByteBuffer getBody() {
+            return body;
+        }
+
+        /**
+         * @return File the body is sent from, or null
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        public long getContentLength() {
+            return contentLength;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package org.example.webbrowser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the Location header resolution of RedirectResolver
+ */
+class RedirectResolverTest {
+    @Test
+    void resolvesRelativeLocation() throws IOException {
+        assertEquals("https://example.com/docs/next",
+                RedirectResolver.resolveLocation("https://example.com/docs/start", "next"));
+        assertEquals("https://example.com/login",
+                RedirectResolver.resolveLocation("https://example.com/docs/start", "/login"));
+        assertEquals("https://example.com/other",
+                RedirectResolver.resolveLocation("https://example.com/docs/start", "../other"));
+    }
+
+    @Test
+    void resolvesAgainstBaseWithoutPath() throws IOException {
+        assertEquals("https://example.com/login", RedirectResolver.resolveLocation("https://example.com", "login"));
+        assertEquals("https://example.com/?lang=en", RedirectResolver.resolveLocation("https://example.com", "?lang=en"));
+    }
+
+    @Test
+    void resolvesProtocolRelativeLocation() throws IOException {
+        assertEquals("https://cdn.example.org/page",
+                RedirectResolver.resolveLocation("https://example.com/start", "//cdn.example.org/page"));
+    }
+
+    @Test
+    void keepsAbsoluteLocation() throws IOException {
+        assertEquals("http://example.org/a?b=c",
+                RedirectResolver.resolveLocation("https://example.com/start", "  http://example.org/a?b=c "));
+    }
+
+    @Test
+    void encodesSpaces() throws IOException {
+        assertEquals("https://example.com/a%20b",
+                RedirectResolver.resolveLocation("https://example.com/start", "/a b"));
+    }
+
+    @Test
+    void stripsFragment() throws IOException {
+        assertEquals("https://example.com/guide",
+                RedirectResolver.resolveLocation("https://example.com/start", "/guide#install"));
+    }
+
+    @Test
+    void rejectsOtherSchemes() {
+        assertThrows(IOException.class,
+                () -> RedirectResolver.resolveLocation("https://example.com/start", "ftp://example.com/file"));
+        assertThrows(IOException.class,
+                () -> RedirectResolver.resolveLocation("https://example.com/start", "javascript:alert(1)"));
+        assertThrows(IOException.class,
+                () -> RedirectResolver.resolveLocation("https://example.com/start", "file:///etc/passwd"));
+    }
+
+    @Test
+    void rejectsInvalidLocation() {
+        assertThrows(IOException.class,
+                () -> RedirectResolver.resolveLocation("https://example.com/start", "http://[::1/page"));
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.webbrowser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for the sizes and srcset parsing of ResponsiveImages
+ */
+class ResponsiveImagesTest {
+    private static final Viewport DESKTOP = new Viewport(1200, 800, 1.0);
+    private static final Viewport PHONE = new Viewport(400, 700, 2.0);
+
+    @Test
+    void evaluatesCalcAfterMediaCondition() {
+        assertEquals(568, ResponsiveImages.evaluateSizes("(min-width: 1000px) calc(50vw - 2rem), 100vw", DESKTOP));
+    }
+
+    @Test
+    void fallsBackToLaterEntryWhenConditionDoesNotMatch() {
+        assertEquals(400, ResponsiveImages.evaluateSizes("(min-width: 1000px) calc(50vw - 2rem), 100vw", PHONE));
+    }
+
+    @Test
+    void evaluatesCalcWithoutCondition() {
+        assertEquals(1180, ResponsiveImages.evaluateSizes("calc(100vw - 20px)", DESKTOP));
+    }
+
+    @Test
+    void evaluatesLastTokenAsLength() {
+        String sizes = "(max-width: 600px) 480px, 50em";
+        assertEquals(480, ResponsiveImages.evaluateSizes(sizes, PHONE));
+        assertEquals(800, ResponsiveImages.evaluateSizes(sizes, DESKTOP));
+    }
+
+    @Test
+    void skipsEntryWithoutLength() {
+        assertEquals(300, ResponsiveImages.evaluateSizes("(min-width: 500px), 300px", DESKTOP));
+    }
+
+    @Test
+    void skipsUnsupportedFunction() {
+        assertEquals(320, ResponsiveImages.evaluateSizes("(min-width: 1000px) min(50vw, 400px), 320px", DESKTOP));
+    }
+
+    @Test
+    void usesViewportWidthWhenNothingMatches() {
+        assertEquals(1200, ResponsiveImages.evaluateSizes("(max-width: 600px) 480px", DESKTOP));
+    }
+
+    @Test
+    void selectsCandidateForCalcSlot() {
+        String srcset = "a-400.jpg 400w, a-800.jpg 800w, a-1600.jpg 1600w";
+        String sizes = "(min-width: 1000px) calc(50vw - 2rem), 100vw";
+        assertEquals("a-800.jpg", ResponsiveImages.select(srcset, sizes, DESKTOP));
+        assertEquals("a-800.jpg", ResponsiveImages.select(srcset, sizes, PHONE));
+    }
+
+    @Test
+    void keepsCommasInsideUrls() {
+        List<ResponsiveImages.Candidate> candidates = ResponsiveImages.parseSrcset("a.jpg?w=1,2 1x, b.jpg 2x", 100);
+        assertEquals(2, candidates.size());
+        assertEquals("a.jpg?w=1,2", candidates.get(0).getUrl());
+        assertEquals("b.jpg", candidates.get(1).getUrl());
+        assertEquals(2, candidates.get(1).getDensity());
+    }
+
+    @Test
+    void convertsWidthDescriptorsToDensities() {
+        List<ResponsiveImages.Candidate> candidates = ResponsiveImages.parseSrcset("a.jpg 400w, b.jpg 1000w", 500);
+        assertEquals(0.8, candidates.get(0).getDensity());
+        assertEquals(2.0, candidates.get(1).getDensity());
+    }
+}
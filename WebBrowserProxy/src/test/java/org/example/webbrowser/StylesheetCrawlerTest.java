@@ -0,0 +1,104 @@
+package org.example.webbrowser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the url() and @import scanning of StylesheetCrawler
+ */
+class StylesheetCrawlerTest {
+    @TempDir
+    Path storeRoot;
+
+    @Test
+    void skipsComments() {
+        List<StylesheetCrawler.Reference> references =
+                StylesheetCrawler.scan("/* url(old.png) @import \"old.css\"; */ body { background: url(new.png) }");
+        assertEquals(1, references.size());
+        assertEquals("new.png", references.get(0).getUrl());
+    }
+
+    @Test
+    void readsUnterminatedCommentToTheEnd() {
+        assertTrue(StylesheetCrawler.scan("a { color: red } /* url(a.png)").isEmpty());
+    }
+
+    @Test
+    void readsQuotedAndUnquotedUrls() {
+        List<StylesheetCrawler.Reference> references = StylesheetCrawler.scan(
+                "a { background: url(\"a b.png\") } b { background: url('c.png') } i { background: URL(  d.png  ) }");
+        assertEquals(3, references.size());
+        assertEquals("a b.png", references.get(0).getUrl());
+        assertEquals("c.png", references.get(1).getUrl());
+        assertEquals("d.png", references.get(2).getUrl());
+        assertFalse(references.get(0).isImport());
+    }
+
+    @Test
+    void keepsParenthesesInsideQuotedUrls() {
+        List<StylesheetCrawler.Reference> references = StylesheetCrawler.scan("a { background: url(\"img(1).png\") }");
+        assertEquals("img(1).png", references.get(0).getUrl());
+    }
+
+    @Test
+    void ignoresEmptyAndUnterminatedUrls() {
+        assertTrue(StylesheetCrawler.scan("a { background: url() } b { background: url(\"x.png").isEmpty());
+    }
+
+    @Test
+    void marksImportsInBothForms() {
+        List<StylesheetCrawler.Reference> references = StylesheetCrawler.scan(
+                "@import url(\"a.css\");\n@import 'b.css' screen;\n@IMPORT url(c.css);\nbody { background: url(d.css) }");
+        assertEquals(4, references.size());
+        assertEquals("a.css", references.get(0).getUrl());
+        assertTrue(references.get(0).isImport());
+        assertEquals("b.css", references.get(1).getUrl());
+        assertTrue(references.get(1).isImport());
+        assertEquals("c.css", references.get(2).getUrl());
+        assertTrue(references.get(2).isImport());
+        assertFalse(references.get(3).isImport());
+    }
+
+    @Test
+    void keepsOriginalUrlForImportCycle() throws Exception {
+        Map<String, String> sources = Map.of(
+                "https://example.com/a.css", "@import \"b.css\";\nbody { color: red }",
+                "https://example.com/b.css", "@import url(a.css);\np { color: blue }");
+        ContentStore.Lease lease = new ContentStore(storeRoot).openLease();
+        StylesheetCrawler crawler = new StylesheetCrawler(lease, (url, priority) -> {
+            try {
+                byte[] bytes = sources.get(url).getBytes(StandardCharsets.ISO_8859_1);
+                String blob = lease.store(Channels.newChannel(new ByteArrayInputStream(bytes)), ".css", 1024, Long.MAX_VALUE);
+                return CompletableFuture.completedFuture(CacheURLStreamHandler.toURL(lease.getStore().resolve(blob)));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }, new HashSet<>());
+
+        String a = read(crawler.crawl("https://example.com/a.css", ResourcePriority.CRITICAL).get(5, TimeUnit.SECONDS));
+        assertTrue(a.startsWith("@import \"cache:"), a);
+
+        String bUrl = a.substring("@import \"".length(), a.indexOf('"', "@import \"".length()));
+        assertEquals("@import url(https://example.com/a.css);\np { color: blue }", read(bUrl));
+        lease.close();
+    }
+
+    private static String read(String cacheUrl) throws Exception {
+        return Files.readString(CacheURLStreamHandler.toPath(cacheUrl), StandardCharsets.ISO_8859_1);
+    }
+}